@@ -0,0 +1,75 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.PropertiesExpander;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import org.xml.sax.InputSource;
+
+/**
+ * The configurations shared by the benchmarks. The bundled Sun checks are
+ * loaded the same way the {@link ConfigurationLoader} loads them.
+ */
+public final class BenchmarkConfigurations {
+
+    private static final String SUN_CHECKS = "org/neumanb/nb/checkstyle/resources/sun_checks.xml"; // NOI18N
+
+    private BenchmarkConfigurations() {
+        super();
+    }
+
+    /**
+     * Parses the bundled Sun checks.
+     *
+     * @return the parsed configuration
+     * @throws CheckstyleException if the configuration can't be parsed
+     */
+    public static com.puppycrawl.tools.checkstyle.api.Configuration loadSunChecks()
+            throws CheckstyleException {
+
+        InputStream is = BenchmarkConfigurations.class.getClassLoader().getResourceAsStream(SUN_CHECKS);
+        if (is == null) {
+            throw new CheckstyleException("Missing " + SUN_CHECKS);
+        }
+        try {
+            return com.puppycrawl.tools.checkstyle.ConfigurationLoader.loadConfiguration(
+                    new InputSource(is), new PropertiesExpander(System.getProperties()),
+                    com.puppycrawl.tools.checkstyle.ConfigurationLoader.IgnoredModulesOptions.EXECUTE);
+        } finally {
+            try {
+                is.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Creates the plugin configuration of the Sun checks. The configuration
+     * is pruned and split into the tiers as in the IDE.
+     *
+     * @param severity the minimal severity
+     * @return the plugin configuration
+     * @throws CheckstyleException if the configuration can't be created
+     */
+    public static Configuration createSunChecks(Severity severity) throws CheckstyleException {
+        ClassLoader classLoader = Checker.class.getClassLoader();
+        ConfigurationPruner pruner = new ConfigurationPruner(severity, classLoader);
+        com.puppycrawl.tools.checkstyle.api.Configuration pruned = pruner.prune(loadSunChecks());
+
+        Configuration configuration = new Configuration(severity, pruned, classLoader, null,
+                ViolationCache.fingerprint(pruned, Collections.<File>emptyList()), pruner.getPrunedCount());
+        ConfigurationSplitter splitter = new ConfigurationSplitter(classLoader,
+                CheckstyleSettings.DEFAULT_BACKGROUND_CHECKS);
+        splitter.split(pruned);
+        for (CheckTier tier : CheckTier.values()) {
+            com.puppycrawl.tools.checkstyle.api.Configuration tierConfiguration = splitter.getTier(tier);
+            configuration.setTier(tier, tierConfiguration, tierConfiguration == null ? 0
+                    : ViolationCache.fingerprint(tierConfiguration, Collections.<File>emptyList()));
+        }
+        return configuration;
+    }
+}
@@ -0,0 +1,32 @@
+package org.neumanb.nb.checkstyle;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled so every run
+ * reports the allocation rate. The usual JMH command line options
+ * are accepted.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+        super();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("org\\.neumanb\\.nb\\.checkstyle\\..*"); // NOI18N
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,184 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the latency from cancelling the running check until
+ * the thread running it is idle again. The check of the inline tier runs
+ * on its own worker thread and is started before each invocation; once it
+ * reaches half of the cancellation polls of the full check the measured
+ * invocation cancels it, by the hook as the editor task does or by
+ * the interrupt, and waits for the worker to return.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+// the setup of each invocation takes the half of the check
+@Measurement(iterations = 20, time = 1)
+@Fork(1)
+public class CancellationBenchmark {
+
+    /**
+     * The way the running check is cancelled.
+     */
+    public enum Method {
+
+        CANCEL,
+
+        INTERRUPT
+    }
+
+    @Param({"HUGE"})
+    public SyntheticSources.Size size;
+
+    @Param({"CANCEL", "INTERRUPT"})
+    public Method method;
+
+    private final FlagHook hook = new FlagHook();
+
+    private final Callable<ViolationStore> check = new Callable<ViolationStore>() {
+
+        @Override
+        public ViolationStore call() throws CheckstyleException {
+            workerThread = Thread.currentThread();
+            CheckstyleListener listener = new CheckstyleListener(Severity.WARNING);
+            checker.addListener(listener);
+            try {
+                checker.process(text.getFile(), text);
+            } finally {
+                checker.removeListener(listener);
+                // the next check must not see the interrupt
+                Thread.interrupted();
+            }
+            return listener.getViolations();
+        }
+    };
+
+    private ExecutorService worker;
+
+    private volatile Thread workerThread;
+
+    private File directory;
+
+    private FileText text;
+
+    private CancellableChecker checker;
+
+    private long halfway;
+
+    private Future<ViolationStore> running;
+
+    @Setup
+    public void setUp() throws IOException, CheckstyleException, InterruptedException, ExecutionException {
+        directory = Files.createTempDirectory("nb-checkstyle-benchmark").toFile(); // NOI18N
+        text = SyntheticSources.write(directory, size);
+
+        Configuration configuration = BenchmarkConfigurations.createSunChecks(Severity.WARNING)
+                .getTier(CheckTier.INLINE);
+        checker = new CancellableChecker(hook, configuration.getCheckstyleClassLoader());
+        checker.configure(configuration.getCheckstyleConfiguration());
+        worker = Executors.newSingleThreadExecutor();
+
+        hook.reset(Long.MAX_VALUE);
+        worker.submit(check).get();
+        halfway = hook.getPolls() / 2;
+    }
+
+    @TearDown
+    public void tearDown() {
+        worker.shutdownNow();
+        checker.destroy();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void startCheck() throws InterruptedException {
+        hook.reset(halfway);
+        running = worker.submit(check);
+        hook.awaitMark();
+    }
+
+    @Benchmark
+    public ViolationStore cancelToIdle() throws InterruptedException, ExecutionException {
+        if (method == Method.CANCEL) {
+            hook.cancel();
+        } else {
+            workerThread.interrupt();
+        }
+        return running.get();
+    }
+
+    /**
+     * The hook cancelled from another thread. It signals once the check
+     * has polled it the given number of times.
+     */
+    private static final class FlagHook implements CancellableChecker.CancellationHook {
+
+        private volatile boolean cancelled;
+
+        // reset before the check is submitted, then used by the worker only
+        private long polls;
+
+        private long mark;
+
+        private volatile CountDownLatch marked;
+
+        public void reset(long mark) {
+            this.cancelled = false;
+            this.polls = 0;
+            this.mark = mark;
+            this.marked = new CountDownLatch(1);
+        }
+
+        public void awaitMark() throws InterruptedException {
+            marked.await();
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public long getPolls() {
+            return polls;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            if (++polls == mark) {
+                marked.countDown();
+            }
+            return cancelled;
+        }
+    }
+}
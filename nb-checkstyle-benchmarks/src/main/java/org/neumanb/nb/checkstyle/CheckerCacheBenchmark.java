@@ -0,0 +1,72 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of leasing and returning the configured checkers under
+ * contention, for the {@link CheckerCache} of the task list and
+ * the {@link CheckerPool} of the editor. The checkers are created during
+ * the warmup, the measured leases are the cache hits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CheckerCacheBenchmark {
+
+    private CheckerCache cache;
+
+    private CheckerPool pool;
+
+    private Configuration configuration;
+
+    private FileObject fileObject;
+
+    @Setup
+    public void setUp() throws IOException, CheckstyleException {
+        configuration = BenchmarkConfigurations.createSunChecks(Severity.WARNING);
+        cache = new CheckerCache();
+        pool = CheckerPool.getDefault();
+        fileObject = FileUtil.createMemoryFileSystem().getRoot().createData("Synthetic", "java"); // NOI18N
+    }
+
+    @TearDown
+    public void tearDown() {
+        cache.clear();
+        pool.invalidate();
+    }
+
+    @Benchmark
+    public Checker cache() throws CheckstyleException {
+        CancellableChecker checker = cache.acquireChecker(fileObject, configuration);
+        cache.releaseChecker(checker);
+        return checker;
+    }
+
+    @Benchmark
+    public Checker pool() throws CheckstyleException {
+        CancellableChecker checker = pool.acquireChecker(configuration.getTier(CheckTier.INLINE), null);
+        pool.releaseChecker(checker);
+        return checker;
+    }
+}
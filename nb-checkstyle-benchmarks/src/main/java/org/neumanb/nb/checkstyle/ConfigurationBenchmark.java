@@ -0,0 +1,54 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of loading the configuration: parsing the Sun checks, pruning
+ * and splitting them as the {@link ConfigurationLoader} does, and
+ * configuring the checker which instantiates all the modules.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+    private com.puppycrawl.tools.checkstyle.api.Configuration sunChecks;
+
+    @Setup
+    public void setUp() throws CheckstyleException {
+        sunChecks = BenchmarkConfigurations.loadSunChecks();
+    }
+
+    @Benchmark
+    public com.puppycrawl.tools.checkstyle.api.Configuration parse() throws CheckstyleException {
+        return BenchmarkConfigurations.loadSunChecks();
+    }
+
+    @Benchmark
+    public Configuration parsePruneAndSplit() throws CheckstyleException {
+        return BenchmarkConfigurations.createSunChecks(Severity.WARNING);
+    }
+
+    @Benchmark
+    public Checker configure() throws CheckstyleException {
+        CancellableChecker checker = new CancellableChecker(null, Checker.class.getClassLoader());
+        checker.configure(sunChecks);
+        checker.destroy();
+        return checker;
+    }
+}
@@ -0,0 +1,135 @@
+package org.neumanb.nb.checkstyle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the deterministic corpus of Java files. The same seed always
+ * produces the same files, so the results of different builds can be
+ * compared. The files are spread over packages of fifty files each.
+ */
+public final class CorpusGenerator {
+
+    private static final int FILES_PER_PACKAGE = 50;
+
+    private final long seed;
+
+    private final int minMethods;
+
+    private final int maxMethods;
+
+    private final double density;
+
+    /**
+     * Creates the generator.
+     *
+     * @param seed the seed of the random generator
+     * @param minMethods the minimal number of methods per file
+     * @param maxMethods the maximal number of methods per file
+     * @param density the probability that a generated statement
+     *             contains a violation, between 0 and 1
+     */
+    public CorpusGenerator(long seed, int minMethods, int maxMethods, double density) {
+        if (minMethods < 0 || maxMethods < minMethods) {
+            throw new IllegalArgumentException("Invalid method range " + minMethods + "-" + maxMethods);
+        }
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Invalid density " + density);
+        }
+        this.seed = seed;
+        this.minMethods = minMethods;
+        this.maxMethods = maxMethods;
+        this.density = density;
+    }
+
+    /**
+     * Writes the corpus to the given directory.
+     *
+     * @param directory the root directory of the corpus
+     * @param count the number of files
+     * @return the generated files in the order of generation
+     * @throws IOException if the corpus can't be written
+     */
+    public List<File> generate(File directory, int count) throws IOException {
+        Random random = new Random(seed);
+        List<File> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String packageName = "corpus.p" + (i / FILES_PER_PACKAGE); // NOI18N
+            File packageDir = new File(directory, packageName.replace('.', File.separatorChar));
+            if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+                throw new IOException("Could not create " + packageDir);
+            }
+            String className = "Generated" + i; // NOI18N
+            File file = new File(packageDir, className + ".java"); // NOI18N
+            Files.write(file.toPath(), generate(random, packageName, className), StandardCharsets.UTF_8);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private List<String> generate(Random random, String packageName, String className) {
+        int methods = minMethods + random.nextInt(maxMethods - minMethods + 1);
+
+        List<String> lines = new ArrayList<>();
+        lines.add("package " + packageName + ";");
+        lines.add("");
+        lines.add("import java.util.ArrayList;");
+        lines.add("import java.util.List;");
+        lines.add("");
+        if (!violates(random)) {
+            lines.add("/**");
+            lines.add(" * Generated class " + className + ".");
+            lines.add(" */");
+        }
+        lines.add("public class " + className + " {");
+        lines.add("");
+        lines.add("    private final List<String> values = new ArrayList<String>();");
+        for (int i = 0; i < methods; i++) {
+            lines.add("");
+            if (!violates(random)) {
+                lines.add("    /**");
+                lines.add("     * Computes the value number " + i + ".");
+                lines.add("     *");
+                lines.add("     * @param input the input value");
+                lines.add("     * @return the computed value");
+                lines.add("     */");
+            }
+            String parameter = violates(random) ? "Input" : "input";
+            lines.add("    public int compute" + i + "(final int " + parameter + ") {");
+            lines.add("        int result = " + parameter + (violates(random) ? " * 31;" : ";"));
+            int statements = 1 + random.nextInt(8);
+            for (int j = 0; j < statements; j++) {
+                lines.add(statement(random, j));
+            }
+            lines.add("        return result;");
+            lines.add("    }");
+        }
+        lines.add("}");
+        lines.add("");
+        return lines;
+    }
+
+    private String statement(Random random, int index) {
+        if (!violates(random)) {
+            return "        result += values.size() + " + (index % 2) + ";";
+        }
+        switch (random.nextInt(3)) {
+            case 0:
+                return "        result += " + (100 + random.nextInt(900)) + ";";
+            case 1:
+                return "        values.add(\"the generated line exceeding the limit of the sun checks, statement "
+                        + index + "\");";
+            default:
+                return "        if (result > 0) result--;";
+        }
+    }
+
+    private boolean violates(Random random) {
+        return random.nextDouble() < density;
+    }
+}
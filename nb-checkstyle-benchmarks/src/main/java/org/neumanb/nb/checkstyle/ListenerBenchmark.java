@@ -0,0 +1,66 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import com.puppycrawl.tools.checkstyle.checks.coding.MagicNumberCheck;
+import com.puppycrawl.tools.checkstyle.checks.javadoc.MissingJavadocMethodCheck;
+import com.puppycrawl.tools.checkstyle.checks.sizes.LineLengthCheck;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of collecting the violations by the {@link CheckstyleListener}.
+ * The results are per violation, so <code>gc.alloc.rate.norm</code> is
+ * the number of bytes allocated per collected violation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(ListenerBenchmark.VIOLATIONS)
+public class ListenerBenchmark {
+
+    static final int VIOLATIONS = 1000;
+
+    private static final Class<?>[] SOURCES = {
+        MagicNumberCheck.class, MissingJavadocMethodCheck.class, LineLengthCheck.class
+    };
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private AuditEvent[] events;
+
+    @Setup
+    public void setUp() {
+        events = new AuditEvent[VIOLATIONS];
+        for (int i = 0; i < VIOLATIONS; i++) {
+            // the messages repeat as in the real files
+            Violation violation = new Violation(i / 2 + 1, i % 80, null, "key", NO_ARGUMENTS, // NOI18N
+                    SeverityLevel.WARNING, null, SOURCES[i % SOURCES.length],
+                    "Message number " + (i % 50)); // NOI18N
+            events[i] = new AuditEvent(this, "Synthetic.java", violation); // NOI18N
+        }
+    }
+
+    @Benchmark
+    public ViolationStore collect() {
+        CheckstyleListener listener = new CheckstyleListener(Severity.WARNING);
+        for (AuditEvent event : events) {
+            listener.addError(event);
+        }
+        return listener.getViolations();
+    }
+}
@@ -0,0 +1,127 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of checking the single file by the configured checker of
+ * the inline tier as the editor does.
+ * <p>
+ * The <code>cancelledHalfway</code> benchmark cancels the check after half
+ * of the cancellation polls of the full check. The difference to the half of
+ * <code>process</code> is the work done once the check is cancelled, on the
+ * same thread. The latency of cancelling the check running on another thread
+ * is measured by the {@link CancellationBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public SyntheticSources.Size size;
+
+    private final CountingHook hook = new CountingHook();
+
+    private File directory;
+
+    private FileText text;
+
+    private CancellableChecker checker;
+
+    private long halfway;
+
+    @Setup
+    public void setUp() throws IOException, CheckstyleException {
+        directory = Files.createTempDirectory("nb-checkstyle-benchmark").toFile(); // NOI18N
+        text = SyntheticSources.write(directory, size);
+
+        Configuration configuration = BenchmarkConfigurations.createSunChecks(Severity.WARNING)
+                .getTier(CheckTier.INLINE);
+        checker = new CancellableChecker(hook, configuration.getCheckstyleClassLoader());
+        checker.configure(configuration.getCheckstyleConfiguration());
+
+        hook.reset(Long.MAX_VALUE);
+        process();
+        halfway = hook.getPolls() / 2;
+    }
+
+    @TearDown
+    public void tearDown() {
+        checker.destroy();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetHook() {
+        hook.reset(Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public ViolationStore process() throws CheckstyleException {
+        CheckstyleListener listener = new CheckstyleListener(Severity.WARNING);
+        checker.addListener(listener);
+        try {
+            checker.process(text.getFile(), text);
+        } finally {
+            checker.removeListener(listener);
+        }
+        return listener.getViolations();
+    }
+
+    @Benchmark
+    public ViolationStore cancelledHalfway() throws CheckstyleException {
+        hook.reset(halfway);
+        return process();
+    }
+
+    /**
+     * The hook cancelling the check after the given number of polls.
+     */
+    private static final class CountingHook implements CancellableChecker.CancellationHook {
+
+        private long polls;
+
+        private long limit;
+
+        public void reset(long limit) {
+            this.polls = 0;
+            this.limit = limit;
+        }
+
+        public long getPolls() {
+            return polls;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return ++polls > limit;
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package org.neumanb.nb.checkstyle;
+
+import org.neumanb.nb.checkstyle.tasklist.CheckstylePushTaskScanner;
+import org.neumanb.nb.checkstyle.tasklist.CheckstyleTaskScanner;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.netbeans.modules.tasklist.trampoline.Accessor;
+import org.netbeans.modules.tasklist.trampoline.TaskManager;
+import org.netbeans.spi.tasklist.FileTaskScanner;
+import org.netbeans.spi.tasklist.PushTaskScanner;
+import org.netbeans.spi.tasklist.Task;
+import org.netbeans.spi.tasklist.TaskScanningScope;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Lookup;
+
+/**
+ * Headless benchmark of the project wide scan. Generates the deterministic
+ * corpus and scans it the same way as the task list does, sequentially
+ * by {@link CheckstyleTaskScanner#scan(FileObject)} file by file and
+ * in parallel by the {@link CheckstylePushTaskScanner} given the corpus
+ * as its scope, each with the cold and the warm caches. Reports the files
+ * and violations per second, the peak heap and the GC time to the console
+ * and as JSON to the output file.
+ * <p>
+ * The cold run starts with no cached checkers and no cached violations,
+ * the warm run repeats the scan with the caches filled by the cold one.
+ * The untimed warmup scan of a part of the corpus precedes the runs so
+ * the first run is not penalized by the JIT compilation.
+ * <p>
+ * Options, all optional:
+ * <pre>
+ *   --files N         the number of generated files (2000)
+ *   --seed N          the seed of the corpus (42)
+ *   --min-methods N   the minimal number of methods per file (2)
+ *   --max-methods N   the maximal number of methods per file (60)
+ *   --density D       the probability of a violation per statement (0.1)
+ *   --warmup N        the files scanned by the warmup (200)
+ *   --corpus DIR      the directory of the corpus (temporary)
+ *   --output FILE     the JSON results (scan-results.json)
+ * </pre>
+ */
+public final class ScanBenchmark {
+
+    private static final PrintStream OUT = System.out;
+
+    private final Map<String, String> options;
+
+    private ScanBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) { // NOI18N
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        new ScanBenchmark(options).run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        int count = getInt("files", 2000); // NOI18N
+        long seed = Long.parseLong(get("seed", "42")); // NOI18N
+        int minMethods = getInt("min-methods", 2); // NOI18N
+        int maxMethods = getInt("max-methods", 60); // NOI18N
+        double density = Double.parseDouble(get("density", "0.1")); // NOI18N
+        int warmup = Math.min(getInt("warmup", 200), count); // NOI18N
+        File output = new File(get("output", "scan-results.json")); // NOI18N
+
+        // the violation cache lives in the user directory
+        if (System.getProperty("netbeans.user") == null) { // NOI18N
+            System.setProperty("netbeans.user", // NOI18N
+                    Files.createTempDirectory("nb-checkstyle-scan-user").toString()); // NOI18N
+        }
+        File corpus = options.containsKey("corpus") // NOI18N
+                ? new File(options.get("corpus")) // NOI18N
+                : Files.createTempDirectory("nb-checkstyle-scan-corpus").toFile(); // NOI18N
+
+        OUT.println("Generating " + count + " files to " + corpus);
+        List<File> files = new CorpusGenerator(seed, minMethods, maxMethods, density).generate(corpus, count);
+        List<FileObject> fileObjects = new ArrayList<>(files.size());
+        for (File file : files) {
+            FileObject fileObject = FileUtil.toFileObject(FileUtil.normalizeFile(file));
+            if (fileObject == null) {
+                throw new IllegalStateException("No file object for " + file + ", is masterfs missing?");
+            }
+            fileObjects.add(fileObject);
+        }
+
+        FileObject root = FileUtil.toFileObject(FileUtil.normalizeFile(corpus));
+        List<Result> results = new ArrayList<>();
+        // each of the scanners is active only with its own value of the setting
+        boolean parallelScan = CheckstyleSettings.getDefault().isParallelScan();
+        try {
+            setParallelScan(false);
+            OUT.println("Warming up on " + warmup + " files");
+            new SequentialScan(root, fileObjects.subList(0, warmup)).scan();
+
+            for (Scan scan : new Scan[] {new SequentialScan(root, fileObjects), new ParallelScan(root)}) {
+                setParallelScan(scan instanceof ParallelScan);
+                clearCaches();
+                results.add(measure(scan, fileObjects.size(), "cold")); // NOI18N
+                ViolationCache.getDefault().waitForWrites();
+                results.add(measure(scan, fileObjects.size(), "warm")); // NOI18N
+            }
+        } finally {
+            setParallelScan(parallelScan);
+        }
+
+        for (Result result : results) {
+            if (result.violations != results.get(0).violations) {
+                System.err.println("WARNING: " + result.getName() + " reported " + result.violations
+                        + " violations, expected " + results.get(0).violations);
+            }
+        }
+
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(output.toPath()),
+                StandardCharsets.UTF_8)) {
+            writeJson(writer, seed, count, minMethods, maxMethods, density, results);
+        }
+        OUT.println("Results written to " + output.getAbsolutePath());
+    }
+
+    private Result measure(Scan scan, int files, String cache) throws InterruptedException {
+        System.gc();
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                pools.add(pool);
+            }
+        }
+        long gcBefore = getGcMillis();
+
+        long start = System.nanoTime();
+        long violations = scan.scan();
+        long nanos = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            // the pools peak at different times, the sum is the upper bound
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        Result result = new Result(scan.getMode(), cache, scan.getThreads(),
+                files, violations, nanos, peakHeap, getGcMillis() - gcBefore);
+        OUT.println(String.format(Locale.ROOT,
+                "%-22s %8.1f files/s %10.1f violations/s %8.1f MB peak heap %6d ms GC", // NOI18N
+                result.getName(), result.getFilesPerSecond(), result.getViolationsPerSecond(),
+                peakHeap / (1024.0 * 1024.0), result.gcMillis));
+        return result;
+    }
+
+    /**
+     * Enables or disables the parallel scan in the settings.
+     */
+    private static void setParallelScan(boolean parallelScan) {
+        CheckstyleSettings settings = CheckstyleSettings.getDefault();
+        CheckstyleSettings.Values values = settings.getValues();
+        settings.setValues(new CheckstyleSettings.Values(values.getCustomSeverity(),
+                values.getCustomConfigFile(), values.getCustomPropertyFile(), values.getCustomClasspath(),
+                values.getCustomProperties(), values.getIgnoredPathsPattern(), values.isCheckModified(),
+                values.getCheckDelay(), values.isAggregateLines(), values.getBackgroundChecks(),
+                parallelScan));
+    }
+
+    private static void clearCaches() {
+        CheckerCache.clearAll();
+        CheckerPool.getDefault().invalidate();
+        ViolationCache.getDefault().clear();
+        ViolationCache.getDefault().waitForWrites();
+    }
+
+    private static long getGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void writeJson(Writer writer, long seed, int files, int minMethods, int maxMethods,
+            double density, List<Result> results) throws IOException {
+
+        writer.write("{\n");
+        writer.write(String.format(Locale.ROOT, "  \"seed\": %d,\n", seed));
+        writer.write(String.format(Locale.ROOT, "  \"files\": %d,\n", files));
+        writer.write(String.format(Locale.ROOT, "  \"minMethods\": %d,\n", minMethods));
+        writer.write(String.format(Locale.ROOT, "  \"maxMethods\": %d,\n", maxMethods));
+        writer.write(String.format(Locale.ROOT, "  \"density\": %s,\n", density));
+        writer.write(String.format(Locale.ROOT, "  \"java\": \"%s\",\n",
+                System.getProperty("java.version").replace("\"", "")));
+        writer.write(String.format(Locale.ROOT, "  \"processors\": %d,\n",
+                Runtime.getRuntime().availableProcessors()));
+        writer.write("  \"runs\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            writer.write(String.format(Locale.ROOT, "    {\"mode\": \"%s\", \"cache\": \"%s\", \"threads\": %d, "
+                    + "\"files\": %d, \"violations\": %d, \"seconds\": %.3f, \"filesPerSecond\": %.1f, "
+                    + "\"violationsPerSecond\": %.1f, \"peakHeapBytes\": %d, \"gcMillis\": %d}%s\n",
+                    result.mode, result.cache, result.threads, result.files, result.violations,
+                    result.nanos / 1e9, result.getFilesPerSecond(), result.getViolationsPerSecond(),
+                    result.peakHeap, result.gcMillis, i + 1 < results.size() ? "," : ""));
+        }
+        writer.write("  ]\n");
+        writer.write("}\n");
+    }
+
+    private String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, Integer.toString(defaultValue)));
+    }
+
+    /**
+     * The scan of the whole corpus measured by the single run.
+     */
+    private abstract static class Scan {
+
+        /**
+         * Scans the corpus.
+         *
+         * @return the number of the reported violations
+         */
+        public abstract long scan() throws InterruptedException;
+
+        public abstract String getMode();
+
+        public abstract int getThreads();
+    }
+
+    /**
+     * The files are scanned one by one as the task list feeds
+     * the {@link FileTaskScanner}.
+     */
+    private static final class SequentialScan extends Scan {
+
+        private final CheckstyleTaskScanner scanner = new CheckstyleTaskScanner();
+
+        // tells the scanner the scope as the task list does, it stays inactive
+        private final CheckstylePushTaskScanner scopeScanner = new CheckstylePushTaskScanner();
+
+        private final FileObject root;
+
+        private final List<FileObject> fileObjects;
+
+        public SequentialScan(FileObject root, List<FileObject> fileObjects) {
+            this.root = root;
+            this.fileObjects = fileObjects;
+        }
+
+        @Override
+        public long scan() {
+            scopeScanner.setScope(new FolderScope(root),
+                    Accessor.DEFAULT.createCallback(new ScanManager(), scopeScanner));
+            // the task list notifies the scanner around each scan
+            scanner.notifyPrepare();
+            try {
+                long violations = 0;
+                for (FileObject fileObject : fileObjects) {
+                    List<? extends Task> tasks = scanner.scan(fileObject);
+                    violations += tasks != null ? tasks.size() : 0;
+                }
+                return violations;
+            } finally {
+                scanner.notifyFinish();
+                scopeScanner.setScope(null, null);
+            }
+        }
+
+        @Override
+        public String getMode() {
+            return "sequential"; // NOI18N
+        }
+
+        @Override
+        public int getThreads() {
+            return 1;
+        }
+    }
+
+    /**
+     * The corpus is the scope of the {@link CheckstylePushTaskScanner} walking
+     * it on its own pool. The scan is over once the scanner reports it has
+     * finished.
+     */
+    private static final class ParallelScan extends Scan {
+
+        private final CheckstylePushTaskScanner scanner = new CheckstylePushTaskScanner();
+
+        private final FileObject root;
+
+        public ParallelScan(FileObject root) {
+            this.root = root;
+        }
+
+        @Override
+        public long scan() throws InterruptedException {
+            ScanManager manager = new ScanManager();
+            PushTaskScanner.Callback callback = Accessor.DEFAULT.createCallback(manager, scanner);
+            scanner.setScope(new FolderScope(root), callback);
+            try {
+                if (!manager.finished.await(1, TimeUnit.HOURS)) {
+                    throw new IllegalStateException("The parallel scan has not finished");
+                }
+            } finally {
+                scanner.setScope(null, null);
+            }
+            return manager.getViolations();
+        }
+
+        @Override
+        public String getMode() {
+            return "parallel"; // NOI18N
+        }
+
+        @Override
+        public int getThreads() {
+            // the size of the pool of the scanner
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Collects the tasks pushed by the scanner in place of the task list.
+     */
+    private static final class ScanManager extends TaskManager {
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private final Map<FileObject, Integer> counts = new ConcurrentHashMap<>();
+
+        public long getViolations() {
+            long violations = 0;
+            for (Integer count : counts.values()) {
+                violations += count;
+            }
+            return violations;
+        }
+
+        @Override
+        public void refresh(FileTaskScanner scanner, FileObject... files) {
+        }
+
+        @Override
+        public void refresh(FileTaskScanner scanner) {
+        }
+
+        @Override
+        public void refresh(TaskScanningScope scope) {
+        }
+
+        @Override
+        public void started(PushTaskScanner scanner) {
+        }
+
+        @Override
+        public void finished(PushTaskScanner scanner) {
+            finished.countDown();
+        }
+
+        @Override
+        public void setTasks(PushTaskScanner scanner, FileObject file, List<? extends Task> tasks) {
+            counts.put(file, tasks.size());
+        }
+
+        @Override
+        public void clearAllTasks(PushTaskScanner scanner) {
+            counts.clear();
+        }
+
+        @Override
+        public boolean isObserved() {
+            return true;
+        }
+
+        @Override
+        public boolean isCurrentEditorScope() {
+            return false;
+        }
+    }
+
+    private static final class FolderScope extends TaskScanningScope {
+
+        private final FileObject folder;
+
+        public FolderScope(FileObject folder) {
+            super(folder.getNameExt(), folder.getPath(), null);
+            this.folder = folder;
+        }
+
+        @Override
+        public boolean isInScope(FileObject fileObject) {
+            return fileObject == folder || FileUtil.isParentOf(folder, fileObject);
+        }
+
+        @Override
+        public void attach(TaskScanningScope.Callback callback) {
+        }
+
+        @Override
+        public Lookup getLookup() {
+            return Lookup.EMPTY;
+        }
+
+        @Override
+        public Iterator<FileObject> iterator() {
+            return Collections.singletonList(folder).iterator();
+        }
+    }
+
+    private static final class Result {
+
+        private final String mode;
+
+        private final String cache;
+
+        private final int threads;
+
+        private final int files;
+
+        private final long violations;
+
+        private final long nanos;
+
+        private final long peakHeap;
+
+        private final long gcMillis;
+
+        public Result(String mode, String cache, int threads, int files, long violations, long nanos,
+                long peakHeap, long gcMillis) {
+            this.mode = mode;
+            this.cache = cache;
+            this.threads = threads;
+            this.files = files;
+            this.violations = violations;
+            this.nanos = nanos;
+            this.peakHeap = peakHeap;
+            this.gcMillis = gcMillis;
+        }
+
+        public String getName() {
+            return mode + "/" + cache;
+        }
+
+        public double getFilesPerSecond() {
+            return files * 1e9 / Math.max(1, nanos);
+        }
+
+        public double getViolationsPerSecond() {
+            return violations * 1e9 / Math.max(1, nanos);
+        }
+    }
+}
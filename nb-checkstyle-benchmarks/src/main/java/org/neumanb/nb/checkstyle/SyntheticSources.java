@@ -0,0 +1,111 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the Java sources of the given size for the benchmarks. The
+ * sources are valid Java and contain the usual violations of the Sun
+ * checks such as the missing javadoc, magic numbers and long lines.
+ */
+public final class SyntheticSources {
+
+    /**
+     * The sizes of the generated sources.
+     */
+    public static enum Size {
+
+        SMALL(5),
+
+        MEDIUM(100),
+
+        HUGE(2500);
+
+        private final int methods;
+
+        private Size(int methods) {
+            this.methods = methods;
+        }
+
+        public int getMethods() {
+            return methods;
+        }
+    }
+
+    private SyntheticSources() {
+        super();
+    }
+
+    /**
+     * Generates the lines of the source.
+     *
+     * @param className the name of the class
+     * @param size the size of the source
+     * @return the lines of the source
+     */
+    public static List<String> generate(String className, Size size) {
+        List<String> lines = new ArrayList<>();
+        lines.add("package org.neumanb.nb.checkstyle.synthetic;");
+        lines.add("");
+        lines.add("import java.util.ArrayList;");
+        lines.add("import java.util.List;");
+        lines.add("");
+        lines.add("/**");
+        lines.add(" * Synthetic class for the benchmarks.");
+        lines.add(" */");
+        lines.add("public class " + className + " {");
+        lines.add("");
+        lines.add("    private final List<String> values = new ArrayList<String>();");
+        for (int i = 0; i < size.getMethods(); i++) {
+            lines.add("");
+            if (i % 2 == 0) {
+                lines.add("    /**");
+                lines.add("     * Computes the value number " + i + ".");
+                lines.add("     *");
+                lines.add("     * @param input the input value");
+                lines.add("     * @return the computed value");
+                lines.add("     */");
+            }
+            lines.add("    public int compute" + i + "(int input) {");
+            lines.add("        int result = input * 31 + " + i + ";");
+            lines.add("        for (int j = 0; j < 10; j++) {");
+            lines.add("            if (result % 7 == 0) {");
+            lines.add("                result += values.size();");
+            lines.add("            } else {");
+            lines.add("                result -= j;");
+            lines.add("            }");
+            lines.add("        }");
+            if (i % 5 == 0) {
+                lines.add("        String message = \"the long line exceeding the limit of the sun checks for the method " + i + "\";");
+                lines.add("        values.add(message);");
+            }
+            lines.add("        return result;");
+            lines.add("    }");
+        }
+        lines.add("}");
+        lines.add("");
+        return lines;
+    }
+
+    /**
+     * Writes the source to the given directory. Some checks read the file
+     * from the disk even if the content is passed to the checker.
+     *
+     * @param directory the directory to write to
+     * @param size the size of the source
+     * @return the content of the written file
+     * @throws IOException if the file can't be written
+     */
+    public static FileText write(File directory, Size size) throws IOException {
+        String className = "Synthetic" + size.getMethods();
+        List<String> lines = generate(className, size);
+        File file = new File(directory, className + ".java");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        return new FileText(file, lines);
+    }
+}
@@ -0,0 +1,513 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import org.neumanb.nb.checkstyle.CheckstyleMetrics;
+import org.neumanb.nb.checkstyle.CorpusGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.StyledDocument;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.loaders.DataObject;
+
+/**
+ * Headless simulation of the editors open in the IDE. Each simulated editor
+ * holds the file of the generated corpus in the in-memory document and
+ * repeats the bursts of edits followed by the think time and sometimes
+ * by the save. Same as the java infrastructure the {@link CheckstyleTask}
+ * is cancelled on each edit, run on the modified document once the typing
+ * pauses and run on the saved document right after the save.
+ * <p>
+ * Reports the latency from the save to the finished update of the annotations
+ * in the {@link CheckstyleAnnotationContainer}, the CPU time wasted by the checks
+ * cancelled while running and the churn of the annotations. The saves edited
+ * again before their annotations were updated are counted as superseded,
+ * their latency is not recorded. The checks run with the configuration
+ * from the settings of the current user.
+ * <p>
+ * The simulation does not need the display, the documents are not shown
+ * and the annotations attached to them are ignored. The edited files
+ * are loaded by the {@link SimulatedEditorLoader}.
+ * <p>
+ * Options, all optional:
+ * <pre>
+ *   --editors N           the number of the simulated editors (8)
+ *   --duration S          the measured seconds (60)
+ *   --warmup S            the seconds of the unmeasured warmup (10)
+ *   --seed N              the seed of the corpus and of the edits (42)
+ *   --min-methods N       the minimal number of methods per file (10)
+ *   --max-methods N       the maximal number of methods per file (80)
+ *   --typing-ms N         the mean delay between the edits (150)
+ *   --burst N             the maximal number of the edits in the burst (20)
+ *   --reparse-ms N        the pause after the burst before the task runs (500)
+ *   --think-ms N          the mean think time after the burst (2000)
+ *   --save-probability P  the probability of the save after the burst (0.5)
+ *   --corpus DIR          the directory of the edited files (temporary)
+ *   --output FILE         the JSON results (editor-results.json)
+ * </pre>
+ */
+public final class EditorLoadSimulator {
+
+    private static final PrintStream OUT = System.out;
+
+    private static final String EDIT_PREFIX = "// edit "; // NOI18N
+
+    private static final int MAX_EDIT_LENGTH = 140;
+
+    private static final long QUIET_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+
+    private final Map<String, String> options;
+
+    private final Stats stats = new Stats();
+
+    private volatile long deadline;
+
+    private EditorLoadSimulator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) { // NOI18N
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        // must be set before anything touches the AWT
+        if (System.getProperty("java.awt.headless") == null) { // NOI18N
+            System.setProperty("java.awt.headless", "true"); // NOI18N
+        }
+        new EditorLoadSimulator(options).run();
+        // the request processors of the plugin are not daemons
+        System.exit(0);
+    }
+
+    private void run() throws IOException, BadLocationException, InterruptedException, ExecutionException {
+        int editors = getInt("editors", 8); // NOI18N
+        int duration = getInt("duration", 60); // NOI18N
+        int warmup = getInt("warmup", 10); // NOI18N
+        long seed = Long.parseLong(get("seed", "42")); // NOI18N
+        int minMethods = getInt("min-methods", 10); // NOI18N
+        int maxMethods = getInt("max-methods", 80); // NOI18N
+        Behavior behavior = new Behavior(getInt("typing-ms", 150), getInt("burst", 20), // NOI18N
+                getInt("reparse-ms", 500), getInt("think-ms", 2000), // NOI18N
+                Double.parseDouble(get("save-probability", "0.5"))); // NOI18N
+        File output = new File(get("output", "editor-results.json")); // NOI18N
+
+        // the violation cache lives in the user directory
+        if (System.getProperty("netbeans.user") == null) { // NOI18N
+            System.setProperty("netbeans.user", // NOI18N
+                    Files.createTempDirectory("nb-checkstyle-editor-user").toString()); // NOI18N
+        }
+        File corpus = options.containsKey("corpus") // NOI18N
+                ? new File(options.get("corpus")) // NOI18N
+                : Files.createTempDirectory("nb-checkstyle-editor-corpus").toFile(); // NOI18N
+
+        OUT.println("Generating " + editors + " files to " + corpus);
+        List<File> files = new CorpusGenerator(seed, minMethods, maxMethods, 0.1).generate(corpus, editors);
+        List<Editor> opened = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            opened.add(new Editor(files.get(i), new Random(seed + i), behavior));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(editors);
+        try {
+            long start = System.nanoTime();
+            deadline = start + TimeUnit.SECONDS.toNanos(warmup + duration);
+            List<Future<Void>> futures = new ArrayList<>(opened.size());
+            for (final Editor editor : opened) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        editor.simulate();
+                        return null;
+                    }
+                }));
+            }
+
+            OUT.println("Warming up for " + warmup + " s");
+            TimeUnit.NANOSECONDS.sleep(start + TimeUnit.SECONDS.toNanos(warmup) - System.nanoTime());
+            stats.reset();
+            OUT.println("Simulating " + editors + " editors for " + duration + " s");
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        waitForQuiet(opened);
+        Result result = stats.snapshot();
+        print(result, duration);
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(output.toPath()),
+                StandardCharsets.UTF_8)) {
+            writeJson(writer, seed, editors, duration, behavior, result);
+        }
+        OUT.println("Results written to " + output.getAbsolutePath());
+
+        for (Editor editor : opened) {
+            editor.close();
+        }
+    }
+
+    /**
+     * Waits for the annotations of the last saves so they are not reported
+     * as missing.
+     */
+    private static void waitForQuiet(List<Editor> editors) throws InterruptedException {
+        long limit = System.nanoTime() + QUIET_TIMEOUT;
+        for (Editor editor : editors) {
+            while (editor.pendingSave.get() != 0 && System.nanoTime() < limit) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static void print(Result result, int duration) {
+        OUT.println(String.format(Locale.ROOT, "Saves %d (%.1f/s), updated %d, superseded %d, unanswered %d", // NOI18N
+                result.saves, result.saves / (double) duration, result.latencies.length,
+                result.superseded, result.unanswered));
+        OUT.println(String.format(Locale.ROOT,
+                "Save to annotation p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms", // NOI18N
+                toMillis(result.getPercentile(50)), toMillis(result.getPercentile(90)),
+                toMillis(result.getPercentile(99)), toMillis(result.getPercentile(100))));
+        OUT.println(String.format(Locale.ROOT,
+                "Checks %d, cancelled %d, wasted CPU %.1f ms", // NOI18N
+                result.checks, result.cancelledChecks, result.cancelledCpuMillis));
+        OUT.println(String.format(Locale.ROOT,
+                "Annotations %d attached, %d detached, %d kept, %.1f changed per save", // NOI18N
+                result.attached, result.detached, result.kept,
+                (result.attached + result.detached) / (double) Math.max(1, result.saves)));
+    }
+
+    private static void writeJson(Writer writer, long seed, int editors, int duration, Behavior behavior,
+            Result result) throws IOException {
+
+        writer.write("{\n");
+        writer.write(String.format(Locale.ROOT, "  \"seed\": %d,\n", seed));
+        writer.write(String.format(Locale.ROOT, "  \"editors\": %d,\n", editors));
+        writer.write(String.format(Locale.ROOT, "  \"durationSeconds\": %d,\n", duration));
+        writer.write(String.format(Locale.ROOT, "  \"typingMillis\": %d,\n", behavior.typingMillis));
+        writer.write(String.format(Locale.ROOT, "  \"burst\": %d,\n", behavior.burst));
+        writer.write(String.format(Locale.ROOT, "  \"reparseMillis\": %d,\n", behavior.reparseMillis));
+        writer.write(String.format(Locale.ROOT, "  \"thinkMillis\": %d,\n", behavior.thinkMillis));
+        writer.write(String.format(Locale.ROOT, "  \"saveProbability\": %s,\n", behavior.saveProbability));
+        writer.write(String.format(Locale.ROOT, "  \"java\": \"%s\",\n",
+                System.getProperty("java.version").replace("\"", "")));
+        writer.write(String.format(Locale.ROOT, "  \"processors\": %d,\n",
+                Runtime.getRuntime().availableProcessors()));
+        writer.write(String.format(Locale.ROOT, "  \"saves\": %d,\n", result.saves));
+        writer.write(String.format(Locale.ROOT, "  \"updatedSaves\": %d,\n", result.latencies.length));
+        writer.write(String.format(Locale.ROOT, "  \"supersededSaves\": %d,\n", result.superseded));
+        writer.write(String.format(Locale.ROOT, "  \"unansweredSaves\": %d,\n", result.unanswered));
+        writer.write(String.format(Locale.ROOT, "  \"latencyMillis\": {\"p50\": %.3f, \"p90\": %.3f, "
+                + "\"p99\": %.3f, \"max\": %.3f},\n",
+                toMillis(result.getPercentile(50)), toMillis(result.getPercentile(90)),
+                toMillis(result.getPercentile(99)), toMillis(result.getPercentile(100))));
+        writer.write(String.format(Locale.ROOT, "  \"checks\": %d,\n", result.checks));
+        writer.write(String.format(Locale.ROOT, "  \"cancelledChecks\": %d,\n", result.cancelledChecks));
+        writer.write(String.format(Locale.ROOT, "  \"cancelledCpuMillis\": %.3f,\n", result.cancelledCpuMillis));
+        writer.write(String.format(Locale.ROOT, "  \"annotationsAttached\": %d,\n", result.attached));
+        writer.write(String.format(Locale.ROOT, "  \"annotationsDetached\": %d,\n", result.detached));
+        writer.write(String.format(Locale.ROOT, "  \"annotationsKept\": %d\n", result.kept));
+        writer.write("}\n");
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private String get(String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        return Integer.parseInt(get(name, Integer.toString(defaultValue)));
+    }
+
+    /**
+     * The simulated editor of the single file.
+     */
+    private final class Editor implements ChangeListener {
+
+        private final File file;
+
+        private final Random random;
+
+        private final Behavior behavior;
+
+        // holds the data object and its document while the editor is open
+        private final SimulatedEditorLoader.SimulatedDataObject dataObject;
+
+        private final StyledDocument document;
+
+        private final CheckstyleTask task;
+
+        private final CheckstyleAnnotationContainer container;
+
+        // the time of the save waiting for the annotations, zero if none
+        private final AtomicLong pendingSave = new AtomicLong();
+
+        private int edits;
+
+        public Editor(File file, Random random, Behavior behavior) throws IOException, BadLocationException {
+            this.file = file;
+            this.random = random;
+            this.behavior = behavior;
+
+            FileObject fileObject = FileUtil.toFileObject(FileUtil.normalizeFile(file));
+            if (fileObject == null) {
+                throw new IllegalStateException("No file object for " + file + ", is masterfs missing?");
+            }
+            DataObject data = DataObject.find(fileObject);
+            if (!(data instanceof SimulatedEditorLoader.SimulatedDataObject)) {
+                throw new IllegalStateException("Not loaded by the simulator " + data);
+            }
+            dataObject = (SimulatedEditorLoader.SimulatedDataObject) data;
+            document = dataObject.getDocument();
+            document.insertString(0, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), null);
+            task = new CheckstyleTask(fileObject);
+            container = CheckstyleAnnotationContainer.getInstance(fileObject);
+            container.addChangeListener(this);
+        }
+
+        public void simulate() throws Exception {
+            // the opened editor is checked right away, the task does not use the parser result
+            task.run(null);
+            while (System.nanoTime() < deadline) {
+                int burst = 1 + random.nextInt(behavior.burst);
+                for (int i = 0; i < burst; i++) {
+                    Thread.sleep(nextDelay(behavior.typingMillis));
+                    edit();
+                }
+                Thread.sleep(behavior.reparseMillis);
+                task.run(null);
+
+                Thread.sleep(nextDelay(behavior.thinkMillis));
+                if (random.nextDouble() < behavior.saveProbability) {
+                    save();
+                }
+            }
+        }
+
+        public void close() {
+            task.cancel();
+            container.removeChangeListener(this);
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            long saved = pendingSave.getAndSet(0);
+            if (saved != 0) {
+                stats.recordLatency(System.nanoTime() - saved);
+            }
+        }
+
+        private void edit() throws BadLocationException {
+            // the document change cancels the running task
+            task.cancel();
+            if (pendingSave.getAndSet(0) != 0) {
+                stats.recordSuperseded();
+            }
+            dataObject.setModified(true);
+
+            Element root = document.getDefaultRootElement();
+            if (random.nextInt(3) == 0) {
+                for (int i = 0; i < root.getElementCount(); i++) {
+                    Element line = root.getElement(i);
+                    int start = line.getStartOffset();
+                    int length = line.getEndOffset() - start;
+                    if (length > EDIT_PREFIX.length()
+                            && EDIT_PREFIX.equals(document.getText(start, EDIT_PREFIX.length()))) {
+                        document.remove(start, Math.min(length, document.getLength() - start));
+                        return;
+                    }
+                }
+            }
+
+            // the long comments break the line length limit
+            StringBuilder line = new StringBuilder(EDIT_PREFIX).append(edits++).append(' ');
+            int padding = random.nextInt(MAX_EDIT_LENGTH);
+            for (int i = 0; i < padding; i++) {
+                line.append('x');
+            }
+            line.append('\n');
+            int offset = root.getElement(1 + random.nextInt(root.getElementCount() - 1)).getStartOffset();
+            document.insertString(Math.min(offset, document.getLength()), line.toString(), null);
+        }
+
+        private void save() throws Exception {
+            String text = document.getText(0, document.getLength());
+            Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            dataObject.setModified(false);
+            stats.recordSave();
+            pendingSave.set(System.nanoTime());
+            task.run(null);
+        }
+
+        private long nextDelay(int mean) {
+            // exponentially distributed as the arrivals of the independent events
+            return Math.max(1, Math.round(-mean * Math.log(1 - random.nextDouble())));
+        }
+    }
+
+    private static final class Behavior {
+
+        private final int typingMillis;
+
+        private final int burst;
+
+        private final int reparseMillis;
+
+        private final int thinkMillis;
+
+        private final double saveProbability;
+
+        public Behavior(int typingMillis, int burst, int reparseMillis, int thinkMillis,
+                double saveProbability) {
+            this.typingMillis = typingMillis;
+            this.burst = Math.max(1, burst);
+            this.reparseMillis = reparseMillis;
+            this.thinkMillis = thinkMillis;
+            this.saveProbability = saveProbability;
+        }
+    }
+
+    /**
+     * The measured values, reset once the warmup ends.
+     */
+    private static final class Stats {
+
+        /* GuardedBy("this") */
+        private long[] latencies = new long[1024];
+
+        /* GuardedBy("this") */
+        private int latencyCount;
+
+        /* GuardedBy("this") */
+        private long saves;
+
+        /* GuardedBy("this") */
+        private long superseded;
+
+        /* GuardedBy("this") */
+        private long attached;
+
+        /* GuardedBy("this") */
+        private long detached;
+
+        /* GuardedBy("this") */
+        private long kept;
+
+        public synchronized void recordLatency(long nanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = nanos;
+        }
+
+        public synchronized void recordSave() {
+            saves++;
+        }
+
+        public synchronized void recordSuperseded() {
+            superseded++;
+        }
+
+        public synchronized void reset() {
+            latencyCount = 0;
+            saves = 0;
+            superseded = 0;
+            attached = CheckstyleAnnotationContainer.getAttachedCount();
+            detached = CheckstyleAnnotationContainer.getDetachedCount();
+            kept = CheckstyleAnnotationContainer.getKeptCount();
+            CheckstyleMetrics.getDefault().resetCounters();
+        }
+
+        public synchronized Result snapshot() {
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            CheckstyleMetrics metrics = CheckstyleMetrics.getDefault();
+            return new Result(sorted, saves, superseded, metrics.getEditorCheckCount(),
+                    metrics.getCancelledCheckCount(), metrics.getCancelledCheckCpuMillis(),
+                    CheckstyleAnnotationContainer.getAttachedCount() - attached,
+                    CheckstyleAnnotationContainer.getDetachedCount() - detached,
+                    CheckstyleAnnotationContainer.getKeptCount() - kept);
+        }
+    }
+
+    private static final class Result {
+
+        private final long[] latencies;
+
+        private final long saves;
+
+        private final long superseded;
+
+        private final long unanswered;
+
+        private final long checks;
+
+        private final long cancelledChecks;
+
+        private final double cancelledCpuMillis;
+
+        private final long attached;
+
+        private final long detached;
+
+        private final long kept;
+
+        public Result(long[] latencies, long saves, long superseded, long checks, long cancelledChecks,
+                double cancelledCpuMillis, long attached, long detached, long kept) {
+            this.latencies = latencies;
+            this.saves = saves;
+            this.superseded = superseded;
+            this.unanswered = Math.max(0, saves - superseded - latencies.length);
+            this.checks = checks;
+            this.cancelledChecks = cancelledChecks;
+            this.cancelledCpuMillis = cancelledCpuMillis;
+            this.attached = attached;
+            this.detached = detached;
+            this.kept = kept;
+        }
+
+        /**
+         * Returns the latency of the given percentile of the sorted values.
+         */
+        public long getPercentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(latencies.length * percentile / 100);
+            return latencies[Math.min(latencies.length, Math.max(1, rank)) - 1];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import org.neumanb.nb.checkstyle.SyntheticSources;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyledDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of resolving the violation lines to the document positions
+ * and creating the annotations of all the problems, as done for the files
+ * small enough to be annotated completely. Every third line has a violation
+ * and every ninth line has another one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionBenchmark {
+
+    @Param({"MEDIUM", "HUGE"})
+    public SyntheticSources.Size size;
+
+    @Param({"false", "true"})
+    public boolean aggregate;
+
+    private StyledDocument document;
+
+    private ViolationStore violations;
+
+    @Setup
+    public void setUp() throws BadLocationException {
+        List<String> lines = SyntheticSources.generate("Synthetic", size); // NOI18N
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        document = new DefaultStyledDocument();
+        document.insertString(0, text.toString(), null);
+
+        violations = new ViolationStore();
+        for (int line = 1; line <= lines.size(); line++) {
+            if (line % 3 == 0) {
+                violations.add(line, 1, SeverityLevel.WARNING, "MagicNumber", // NOI18N
+                        "'31' is a magic number."); // NOI18N
+            }
+            if (line % 9 == 0) {
+                violations.add(line, 1, SeverityLevel.ERROR, "LineLength", // NOI18N
+                        "Line is longer than 80 characters."); // NOI18N
+            }
+        }
+    }
+
+    @Benchmark
+    public List<CheckstyleAnnotation> resolve() {
+        DocumentProblems problems = new DocumentProblems(document, violations, aggregate);
+        int[] entries = new int[problems.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = i;
+        }
+        return problems.createAnnotations(entries);
+    }
+}
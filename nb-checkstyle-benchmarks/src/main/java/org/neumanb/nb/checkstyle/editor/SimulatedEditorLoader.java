@@ -0,0 +1,127 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import javax.swing.JEditorPane;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyledDocument;
+import org.openide.cookies.EditorCookie;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObjectExistsException;
+import org.openide.loaders.MultiDataObject;
+import org.openide.loaders.MultiFileLoader;
+import org.openide.loaders.UniFileLoader;
+import org.openide.text.Line;
+import org.openide.util.Lookup;
+import org.openide.util.Task;
+
+/**
+ * Loader of the java files edited by the {@link EditorLoadSimulator}. The data
+ * objects hold the document in memory and report it as opened in the editor
+ * without any pane, so the plugin attaches its annotations the same way
+ * as in the IDE. Registered in <code>META-INF/services</code>.
+ */
+public final class SimulatedEditorLoader extends UniFileLoader {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final JEditorPane[] NO_PANES = new JEditorPane[0];
+
+    public SimulatedEditorLoader() {
+        super(SimulatedDataObject.class.getName());
+    }
+
+    @Override
+    protected FileObject findPrimaryFile(FileObject fileObject) {
+        return !fileObject.isFolder() && fileObject.hasExt("java") ? fileObject : null; // NOI18N
+    }
+
+    @Override
+    protected MultiDataObject createMultiObject(FileObject primaryFile) throws IOException {
+        return new SimulatedDataObject(primaryFile, this);
+    }
+
+    /**
+     * The edited file with the document of the simulated editor.
+     */
+    public static final class SimulatedDataObject extends MultiDataObject {
+
+        private final StyledDocument document = new DefaultStyledDocument();
+
+        SimulatedDataObject(FileObject primaryFile, MultiFileLoader loader) throws DataObjectExistsException {
+            super(primaryFile, loader);
+            getCookieSet().add(new SimulatedEditor());
+        }
+
+        @Override
+        public Lookup getLookup() {
+            return getCookieSet().getLookup();
+        }
+
+        /**
+         * Returns the document of the simulated editor.
+         */
+        public StyledDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * The editor opened for the whole life of the data object.
+         */
+        private final class SimulatedEditor implements EditorCookie.Observable {
+
+            @Override
+            public void open() {
+            }
+
+            @Override
+            public boolean close() {
+                return false;
+            }
+
+            @Override
+            public Task prepareDocument() {
+                return Task.EMPTY;
+            }
+
+            @Override
+            public StyledDocument openDocument() {
+                return document;
+            }
+
+            @Override
+            public StyledDocument getDocument() {
+                return document;
+            }
+
+            @Override
+            public void saveDocument() {
+            }
+
+            @Override
+            public boolean isModified() {
+                return SimulatedDataObject.this.isModified();
+            }
+
+            @Override
+            public JEditorPane[] getOpenedPanes() {
+                // opened, not shown
+                return NO_PANES;
+            }
+
+            @Override
+            public Line.Set getLineSet() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void addPropertyChangeListener(PropertyChangeListener listener) {
+                // never closed
+            }
+
+            @Override
+            public void removePropertyChangeListener(PropertyChangeListener listener) {
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+public class CheckerCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CheckerCache cache;
+
+    private File first;
+
+    private File second;
+
+    @Before
+    public void setUp() throws IOException {
+        cache = new CheckerCache();
+        first = createFile("First.java", "class First {\n}\n");
+        second = createFile("Second.java", "class Second {\n}\n");
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Test
+    public void testReuseInSameDirectory() throws Exception {
+        Configuration configuration = ViolationCacheTest.createConfiguration(
+                new DefaultConfiguration("NewlineAtEndOfFile"));
+
+        CancellableChecker checker = cache.acquireChecker(toFileObject(first), configuration);
+        checker.process(Collections.singletonList(first));
+        cache.releaseChecker(checker);
+
+        CancellableChecker reused = cache.acquireChecker(toFileObject(second), configuration);
+        assertSame(checker, reused);
+        // leased checkers are never shared
+        CancellableChecker other = cache.acquireChecker(toFileObject(first), configuration);
+        assertNotSame(reused, other);
+        cache.releaseChecker(reused);
+        cache.releaseChecker(other);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testCrossFileReportedAgainAfterReset() throws Exception {
+        Configuration configuration = ViolationCacheTest.createConfiguration(
+                new DefaultConfiguration("JavadocPackage"));
+
+        CancellableChecker checker = cache.acquireChecker(toFileObject(first), configuration);
+        assertEquals(1, checker.process(Collections.singletonList(first)));
+        cache.releaseChecker(checker);
+
+        // the missing package-info.java is reported once for the directory
+        checker = cache.acquireChecker(toFileObject(second), configuration);
+        assertEquals(0, checker.process(Collections.singletonList(second)));
+        cache.releaseChecker(checker);
+
+        // the next scan reports it again with the same checker
+        cache.reset();
+        CancellableChecker reset = cache.acquireChecker(toFileObject(second), configuration);
+        assertSame(checker, reset);
+        assertEquals(1, reset.process(Collections.singletonList(second)));
+        cache.releaseChecker(reset);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        Configuration configuration = ViolationCacheTest.createConfiguration(
+                new DefaultConfiguration("NewlineAtEndOfFile"));
+
+        CancellableChecker checker = cache.acquireChecker(toFileObject(first), configuration);
+        cache.releaseChecker(checker);
+        cache.clear();
+
+        CancellableChecker fresh = cache.acquireChecker(toFileObject(second), configuration);
+        assertNotSame(checker, fresh);
+        cache.releaseChecker(fresh);
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static FileObject toFileObject(File file) {
+        FileObject fileObject = FileUtil.toFileObject(FileUtil.normalizeFile(file));
+        assertNotNull(fileObject);
+        return fileObject;
+    }
+}
@@ -0,0 +1,74 @@
+package org.neumanb.nb.checkstyle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ModuleTimingsTest {
+
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final long BETWEEN = TimeUnit.MILLISECONDS.toNanos(4);
+
+    private static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Test
+    public void testHysteresis() {
+        ModuleTimings timings = ModuleTimings.getDefault();
+        final AtomicInteger changes = new AtomicInteger();
+        ChangeListener listener = new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                changes.incrementAndGet();
+            }
+        };
+        timings.addChangeListener(listener);
+        try {
+            String key = "testHysteresis"; // NOI18N
+            record(timings, key, SLOW, 10);
+            assertTrue(timings.isSlow(key));
+            assertEquals(1, changes.get());
+
+            // between the thresholds the module stays slow
+            record(timings, key, BETWEEN, 30);
+            assertTrue(timings.isSlow(key));
+            assertEquals(1, changes.get());
+
+            record(timings, key, FAST, 30);
+            assertFalse(timings.isSlow(key));
+            assertEquals(2, changes.get());
+
+            // and fast
+            record(timings, key, BETWEEN, 30);
+            assertFalse(timings.isSlow(key));
+            assertEquals(2, changes.get());
+        } finally {
+            timings.removeChangeListener(listener);
+        }
+    }
+
+    @Test
+    public void testSingleSpike() {
+        ModuleTimings timings = ModuleTimings.getDefault();
+        String key = "testSingleSpike"; // NOI18N
+        record(timings, key, FAST, 10);
+        record(timings, key, TimeUnit.MILLISECONDS.toNanos(100), 1);
+        assertTrue(timings.isSlow(key));
+
+        // the module returns to the inline tier once the average drops
+        record(timings, key, FAST, 20);
+        assertFalse(timings.isSlow(key));
+    }
+
+    private static void record(ModuleTimings timings, String key, long nanos, int count) {
+        for (int i = 0; i < count; i++) {
+            timings.record(key, nanos);
+        }
+    }
+}
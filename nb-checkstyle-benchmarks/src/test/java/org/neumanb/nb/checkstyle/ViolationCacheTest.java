@@ -0,0 +1,168 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import com.puppycrawl.tools.checkstyle.checks.sizes.LineLengthCheck;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ViolationCacheTest {
+
+    private static final String MESSAGES = "com.puppycrawl.tools.checkstyle.checks.sizes.messages"; // NOI18N
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ViolationCache cache;
+
+    @Before
+    public void setUp() {
+        cache = ViolationCache.getDefault();
+        cache.clear();
+        cache.waitForWrites();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Configuration configuration = createConfiguration(new DefaultConfiguration("LineLength"));
+        File file = createFile("Test.java", "class Test {\n}\n");
+
+        ViolationCache.Key key = cache.createKey(file, configuration);
+        assertNotNull(key);
+        assertFalse(cache.contains(key));
+        assertNull(cache.get(key, configuration));
+
+        Violation lineLength = new Violation(1, 0, MESSAGES, "maxLineLen", new Object[] {80, 95},
+                SeverityLevel.WARNING, null, LineLengthCheck.class, null);
+        // the quote and the brace are no MessageFormat pattern once cached
+        Violation custom = new Violation(2, 5, null, "custom", new Object[0], SeverityLevel.ERROR,
+                "customId", LineLengthCheck.class, "Don''t use '{'braces}");
+        ViolationCache.Recorder recorder = new ViolationCache.Recorder();
+        recorder.addError(new AuditEvent(this, file.getAbsolutePath(), lineLength));
+        recorder.addError(new AuditEvent(this, file.getAbsolutePath(), custom));
+
+        cache.put(key, recorder);
+        cache.waitForWrites();
+        assertTrue(cache.contains(key));
+
+        List<Violation> cached = cache.get(key, configuration);
+        assertNotNull(cached);
+        assertEquals(2, cached.size());
+        assertViolation(lineLength, cached.get(0));
+        assertViolation(custom, cached.get(1));
+
+        CheckstyleListener listener = new CheckstyleListener(Severity.INFO);
+        cache.replay(cached, file.getAbsolutePath(), listener);
+        ViolationStore store = listener.getViolations();
+        assertEquals(2, store.size());
+        assertEquals("Line is longer than 80 characters (found 95).", store.getMessage(0));
+        assertEquals(LineLengthCheck.class.getName(), store.getSource(0));
+        assertEquals("Don't use {braces}", store.getMessage(1));
+        assertEquals("customId", store.getSource(1));
+    }
+
+    @Test
+    public void testChangedContent() throws Exception {
+        Configuration configuration = createConfiguration(new DefaultConfiguration("LineLength"));
+        File file = createFile("Test.java", "class Test {\n}\n");
+
+        ViolationCache.Key key = cache.createKey(file, configuration);
+        cache.put(key, new ViolationCache.Recorder());
+        cache.waitForWrites();
+        assertTrue(cache.contains(key));
+        assertEquals(Collections.<Violation>emptyList(), cache.get(key, configuration));
+
+        Files.write(file.toPath(), "class Test {\n    int field;\n}\n".getBytes(StandardCharsets.UTF_8));
+        ViolationCache.Key changed = cache.createKey(file, configuration);
+        assertFalse(key.equals(changed));
+        assertFalse(cache.contains(changed));
+    }
+
+    @Test
+    public void testFailedCheckNotCached() throws Exception {
+        Configuration configuration = createConfiguration(new DefaultConfiguration("LineLength"));
+        File file = createFile("Test.java", "class Test {\n}\n");
+
+        ViolationCache.Key key = cache.createKey(file, configuration);
+        ViolationCache.Recorder recorder = new ViolationCache.Recorder();
+        recorder.addException(new AuditEvent(this, file.getAbsolutePath()), new IllegalStateException());
+        cache.put(key, recorder);
+        cache.waitForWrites();
+        assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testCrossFileChecksNotCached() throws Exception {
+        Configuration configuration = createConfiguration(new DefaultConfiguration("LineLength"),
+                new DefaultConfiguration("JavadocPackage"), new DefaultConfiguration("SeverityMatchFilter"));
+        File file = createFile("Test.java", "class Test {\n}\n");
+        assertNull(cache.createKey(file, configuration));
+
+        // the filters go to both parts
+        Configuration perFile = configuration.getPerFileChecks();
+        assertModules(perFile, "LineLength", "SeverityMatchFilter");
+        assertNotNull(cache.createKey(file, perFile));
+        Configuration crossFile = configuration.getCrossFileChecks();
+        assertModules(crossFile, "JavadocPackage", "SeverityMatchFilter");
+        assertNull(cache.createKey(file, crossFile));
+        assertFalse(perFile.getFingerprint() == crossFile.getFingerprint());
+    }
+
+    @Test
+    public void testWithoutCrossFileChecks() throws Exception {
+        Configuration configuration = createConfiguration(new DefaultConfiguration("LineLength"));
+        assertSame(configuration, configuration.getPerFileChecks());
+        assertNull(configuration.getCrossFileChecks());
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertViolation(Violation expected, Violation actual) {
+        assertEquals(expected.getLineNo(), actual.getLineNo());
+        assertEquals(expected.getColumnNo(), actual.getColumnNo());
+        assertEquals(expected.getSeverityLevel(), actual.getSeverityLevel());
+        assertEquals(expected.getKey(), actual.getKey());
+        assertEquals(expected.getModuleId(), actual.getModuleId());
+        assertEquals(expected.getSourceName(), actual.getSourceName());
+        assertEquals(expected.getViolation(), actual.getViolation());
+    }
+
+    private static void assertModules(Configuration configuration, String... names) {
+        com.puppycrawl.tools.checkstyle.api.Configuration[] children =
+                configuration.getCheckstyleConfiguration().getChildren();
+        assertEquals(names.length, children.length);
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], children[i].getName());
+        }
+    }
+
+    static Configuration createConfiguration(DefaultConfiguration... modules) {
+        DefaultConfiguration checker = new DefaultConfiguration("Checker");
+        for (DefaultConfiguration module : modules) {
+            checker.addChild(module);
+        }
+        return new Configuration(Severity.INFO, checker, Checker.class.getClassLoader(), null,
+                ViolationCache.fingerprint(checker, Collections.<File>emptyList()), 0);
+    }
+}
@@ -0,0 +1,75 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ViolationStoreTest {
+
+    @Test
+    public void testRoundTrip() {
+        ViolationStore store = new ViolationStore();
+        // grows past the initial capacity
+        for (int i = 0; i < 40; i++) {
+            store.add(i + 1, i % 3, SeverityLevel.values()[i % 4], "Source" + (i % 2), "Message " + i);
+        }
+
+        assertEquals(40, store.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i + 1, store.getLine(i));
+            assertEquals(i % 3, store.getColumn(i));
+            assertEquals(SeverityLevel.values()[i % 4], store.getSeverityLevel(i));
+            assertEquals("Source" + (i % 2), store.getSource(i));
+            assertEquals("Message " + i, store.getMessage(i));
+        }
+    }
+
+    @Test
+    public void testSharedStrings() {
+        ViolationStore first = new ViolationStore();
+        first.add(1, 0, SeverityLevel.WARNING, "LineLength", new String("Line is longer"));
+        ViolationStore second = new ViolationStore();
+        second.add(2, 0, SeverityLevel.WARNING, "LineLength", new String("Line is longer"));
+
+        assertSame(first.getMessage(0), second.getMessage(0));
+        assertSame(first.getSource(0), second.getSource(0));
+    }
+
+    @Test
+    public void testIndexesByLine() {
+        ViolationStore store = new ViolationStore();
+        store.add(5, 0, SeverityLevel.ERROR, "A", "first");
+        store.add(2, 0, SeverityLevel.ERROR, "B", "second");
+        store.add(5, 3, SeverityLevel.ERROR, "C", "third");
+        store.add(1, 0, SeverityLevel.ERROR, "D", "fourth");
+
+        // the violations on the same line keep the reported order
+        assertArrayEquals(new int[] {3, 1, 0, 2}, store.getIndexesByLine());
+    }
+
+    @Test
+    public void testAddAll() {
+        ViolationStore first = new ViolationStore();
+        first.add(3, 1, SeverityLevel.WARNING, "A", "first");
+        ViolationStore second = new ViolationStore();
+        second.add(1, 2, SeverityLevel.ERROR, "B", "second");
+
+        first.addAll(second);
+        assertEquals(2, first.size());
+        assertEquals(1, first.getLine(1));
+        assertEquals(2, first.getColumn(1));
+        assertEquals(SeverityLevel.ERROR, first.getSeverityLevel(1));
+        assertEquals("B", first.getSource(1));
+        assertEquals("second", first.getMessage(1));
+        assertEquals(1, second.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        ViolationStore store = new ViolationStore();
+        store.add(1, 0, SeverityLevel.INFO, "A", "message");
+        store.getLine(1);
+    }
+}
@@ -0,0 +1,150 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.StyledDocument;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neumanb.nb.checkstyle.CheckTier;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.loaders.DataObject;
+
+public class CheckstyleAnnotationContainerTest {
+
+    private static final String CONTENT = "class Test {\n    int a;\n    int b;\n    int c;\n}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Semaphore updates = new Semaphore(0);
+
+    private final ChangeListener listener = new ChangeListener() {
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            updates.release();
+        }
+    };
+
+    private StyledDocument document;
+
+    private CheckstyleAnnotationContainer container;
+
+    @Before
+    public void setUp() throws Exception {
+        File file = folder.newFile("Test.java");
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+        FileObject fileObject = FileUtil.toFileObject(FileUtil.normalizeFile(file));
+        assertNotNull(fileObject);
+
+        // loaded by the simulated loader of the benchmarks
+        DataObject dataObject = DataObject.find(fileObject);
+        assertTrue(dataObject instanceof SimulatedEditorLoader.SimulatedDataObject);
+        document = ((SimulatedEditorLoader.SimulatedDataObject) dataObject).getDocument();
+        document.insertString(0, CONTENT, null);
+
+        container = CheckstyleAnnotationContainer.getInstance(fileObject);
+        assertNotNull(container);
+        container.addChangeListener(listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        container.removeChangeListener(listener);
+        CheckstyleAnnotationContainer.reset();
+    }
+
+    @Test
+    public void testMergeKeepsSameProblems() throws Exception {
+        List<CheckstyleAnnotation> first = update(createViolations(2, 3));
+        assertEquals(2, first.size());
+
+        ViolationStore violations = createViolations(2, 3);
+        violations.add(4, 5, SeverityLevel.WARNING, "MagicNumber", "New problem");
+        List<CheckstyleAnnotation> second = update(violations);
+
+        assertEquals(3, second.size());
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+        assertEquals(3, second.get(2).getLine());
+        assertEquals("New problem", second.get(2).getShortDescription());
+    }
+
+    @Test
+    public void testMergeFollowsMovedLines() throws Exception {
+        List<CheckstyleAnnotation> first = update(createViolations(2, 3));
+
+        // the current annotations move with the text
+        document.insertString(0, "// header\n", null);
+        List<CheckstyleAnnotation> second = update(createViolations(3, 4));
+
+        assertSame(first.get(0), second.get(0));
+        assertSame(first.get(1), second.get(1));
+    }
+
+    @Test
+    public void testMergeReplacesChangedProblems() throws Exception {
+        List<CheckstyleAnnotation> first = update(createViolations(2, 3));
+
+        ViolationStore violations = new ViolationStore();
+        violations.add(2, 5, SeverityLevel.WARNING, "JavadocVariable", "Missing a Javadoc comment.");
+        violations.add(3, 5, SeverityLevel.ERROR, "JavadocVariable", "Missing a Javadoc comment.");
+        List<CheckstyleAnnotation> second = update(violations);
+
+        assertSame(first.get(0), second.get(0));
+        // the severity differs so does the annotation type
+        assertNotSame(first.get(1), second.get(1));
+    }
+
+    @Test
+    public void testOnlyLiveWindowAnnotated() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append("    int field").append(i).append(";\n");
+        }
+        document.insertString(0, text.toString(), null);
+
+        ViolationStore violations = new ViolationStore();
+        for (int line = 1; line <= 1000; line++) {
+            violations.add(line, 5, SeverityLevel.WARNING, "JavadocVariable", "Missing a Javadoc comment.");
+        }
+        List<CheckstyleAnnotation> annotations = update(violations);
+
+        // the top of the file until the viewport is known
+        assertEquals(101, annotations.size());
+        assertEquals(0, annotations.get(0).getLine());
+        assertEquals(100, annotations.get(100).getLine());
+    }
+
+    private List<CheckstyleAnnotation> update(ViolationStore violations) throws InterruptedException {
+        updates.drainPermits();
+        container.setViolations(CheckTier.INLINE, document, violations, false);
+        assertTrue(updates.tryAcquire(10, TimeUnit.SECONDS));
+        return container.getAnnotations();
+    }
+
+    private static ViolationStore createViolations(int... lines) {
+        ViolationStore violations = new ViolationStore();
+        for (int line : lines) {
+            violations.add(line, 5, SeverityLevel.WARNING, "JavadocVariable", "Missing a Javadoc comment.");
+        }
+        return violations;
+    }
+}
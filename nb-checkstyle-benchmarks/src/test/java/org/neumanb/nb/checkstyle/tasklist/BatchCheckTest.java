@@ -0,0 +1,101 @@
+package org.neumanb.nb.checkstyle.tasklist;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neumanb.nb.checkstyle.CancellableChecker;
+import org.neumanb.nb.checkstyle.Configuration;
+import org.neumanb.nb.checkstyle.Severity;
+import org.neumanb.nb.checkstyle.ViolationCache;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import org.openide.filesystems.FileUtil;
+
+public class BatchCheckTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CancellableChecker checker;
+
+    @After
+    public void tearDown() {
+        if (checker != null) {
+            checker.destroy();
+        }
+    }
+
+    @Test
+    public void testAbsoluteNames() throws Exception {
+        assertRouted(createConfiguration(null));
+    }
+
+    @Test
+    public void testBasedir() throws Exception {
+        // the names are reported relative to the basedir
+        assertRouted(createConfiguration(folder.getRoot().getAbsolutePath()));
+    }
+
+    @Test
+    public void testBasedirAbove() throws Exception {
+        assertRouted(createConfiguration(folder.getRoot().getParentFile().getAbsolutePath()));
+    }
+
+    private void assertRouted(Configuration configuration) throws Exception {
+        File directory = folder.newFolder("pkg");
+        // no newline at the end makes a single violation
+        File first = createFile(directory, "First.java", "class First {\n}");
+        File second = createFile(directory, "Second.java", "class Second {\n}\n");
+        File third = createFile(directory, "Third.java", "class Third {\n}");
+
+        checker = new CancellableChecker(null, configuration.getCheckstyleClassLoader());
+        checker.configure(configuration.getCheckstyleConfiguration());
+
+        BatchCheck batch = new BatchCheck(configuration);
+        BatchCheck.Item firstItem = add(batch, first);
+        BatchCheck.Item secondItem = add(batch, second);
+        BatchCheck.Item thirdItem = add(batch, third);
+        batch.process(checker);
+
+        assertFalse(firstItem.isFailed());
+        assertViolations(1, firstItem.getViolations());
+        assertViolations(0, secondItem.getViolations());
+        assertViolations(1, thirdItem.getViolations());
+    }
+
+    private static BatchCheck.Item add(BatchCheck batch, File file) {
+        return batch.add(FileUtil.toFileObject(FileUtil.normalizeFile(file)), file, null);
+    }
+
+    private static void assertViolations(int expected, ViolationStore violations) {
+        assertEquals(expected, violations.size());
+        for (int i = 0; i < violations.size(); i++) {
+            assertEquals(1, violations.getLine(i));
+        }
+    }
+
+    private static File createFile(File directory, String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Configuration createConfiguration(String basedir) {
+        DefaultConfiguration checker = new DefaultConfiguration("Checker");
+        if (basedir != null) {
+            checker.addProperty("basedir", basedir);
+        }
+        checker.addChild(new DefaultConfiguration("NewlineAtEndOfFile"));
+        return new Configuration(Severity.INFO, checker, Checker.class.getClassLoader(), null,
+                ViolationCache.fingerprint(checker, Collections.<File>emptyList()), 0);
+    }
+}
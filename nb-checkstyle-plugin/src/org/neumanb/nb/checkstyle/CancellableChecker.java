@@ -1,28 +1,68 @@
 package org.neumanb.nb.checkstyle;
 
 import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.ModuleFactory;
+import com.puppycrawl.tools.checkstyle.PackageNamesLoader;
+import com.puppycrawl.tools.checkstyle.PackageObjectFactory;
+import com.puppycrawl.tools.checkstyle.TreeWalker;
+import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.BeforeExecutionFileFilter;
 import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
 import com.puppycrawl.tools.checkstyle.api.Configuration;
 import com.puppycrawl.tools.checkstyle.api.Context;
+import com.puppycrawl.tools.checkstyle.api.DetailAST;
 import com.puppycrawl.tools.checkstyle.api.FileSetCheck;
 import com.puppycrawl.tools.checkstyle.api.FileText;
 import com.puppycrawl.tools.checkstyle.api.MessageDispatcher;
 import com.puppycrawl.tools.checkstyle.api.Violation;
+import com.puppycrawl.tools.checkstyle.utils.TokenUtil;
 import org.neumanb.nb.checkstyle.editor.CheckstyleTask;
 import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The checkstyle checker that calls for the cancel status of the
  * {@link CheckstyleTask} and cancel itself if the task is cancelled.
+ * <p>
+ * Each <code>TreeWalker</code> gets an additional check consulting
+ * the cancel status and the thread interrupt on every visited node so
+ * the long running walk is cancelled as well. The walker running the checks
+ * requiring the comment nodes gets another one for the walk of the tree
+ * with the comments.
+ * <p>
+ * The time each top level module spends on the file is recorded to
+ * the {@link ModuleTimings}. When the {@link CheckProfiler} is enabled
+ * the checks of each <code>TreeWalker</code> are isolated in their own
+ * walkers so their time is recorded separately as well.
+ * <p>
+ * The checks depending on more than the checked file, see
+ * {@link ModuleInspector#isCrossFile(Object)}, keep their state across
+ * the files. The checker can be {@link #reset() reset} to forget it
+ * before it is reused.
  *
  * @see CheckstyleTask
  */
 public class CancellableChecker extends Checker {
 
+    private static final Logger LOGGER = Logger.getLogger(CancellableChecker.class.getName());
+
+    private static final String SENTINEL_NAME = CancellableChecker.class.getName() + ".Sentinel"; // NOI18N
+
+    private static final String COMMENT_SENTINEL_NAME = SENTINEL_NAME + ".Comment"; // NOI18N
+
     private static final TreeSet<Violation> EMPTY_SET = new TreeSet<Violation>() {
 
         @Override
@@ -36,26 +76,179 @@ public class CancellableChecker extends Checker {
         }
     };
 
-    private final CancellationHook hook;
+    private static final CancellationHook NEVER_CANCELED = new CancellationHook() {
+
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+    };
+
+    private final CancellationHook delegatingHook = new CancellationHook() {
+
+        @Override
+        public boolean isCanceled() {
+            return hook.isCanceled();
+        }
+    };
+
+    private final List<FileSetCheck> fileSetChecks = new ArrayList<>();
+
+    private final List<BeforeExecutionFileFilter> fileFilters = new ArrayList<>();
+
+    private final List<CancellableFileSetCheck> crossFileChecks = new ArrayList<>();
+
+    private final ClassLoader moduleClassLoader;
+
+    // the profiling checker is configured differently
+    private final boolean profiling = CheckProfiler.getDefault().isEnabled();
+
+    private volatile CancellationHook hook;
+
+    // the time of parsing and walking the current file
+    private long baselineNanos;
+
+    // the configuration of the module being set up
+    private Configuration moduleConf;
+
+    // the check being replaced by the fresh instance
+    private CancellableFileSetCheck renewed;
+
+    // the walker being set up
+    private String isolatedKey;
+
+    private Isolation isolation = Isolation.NONE;
+
+    // resolves the modules during the setup
+    private ModuleInspector inspector;
+
+    private String charset = System.getProperty("file.encoding", StandardCharsets.UTF_8.name()); // NOI18N
 
     /**
      * Contructs the checker that won't do any checks whenewer the task has cancelled
      * status set to <code>true</code>.
      *
      * @param task the task that will be consulted for the cancellation
+     * @param moduleClassLoader the classloader to load checks
      * @throws CheckstyleException if any problem with initialization occurs
      */
-    public CancellableChecker(CancellationHook hook) throws CheckstyleException {
-        this.hook = hook;
+    public CancellableChecker(CancellationHook hook, ClassLoader moduleClassLoader)
+            throws CheckstyleException {
+        this.moduleClassLoader = moduleClassLoader;
+        setModuleClassLoader(moduleClassLoader);
+        setCancellationHook(hook);
     }
 
+    /**
+     * Sets the hook consulted for the cancellation. Allows the configured
+     * checker to be reused for another task.
+     *
+     * @param hook the hook to consult, <code>null</code> if the checks should
+     *             never be cancelled
+     */
+    public void setCancellationHook(CancellationHook hook) {
+        this.hook = hook != null ? hook : NEVER_CANCELED;
+    }
+
+    /**
+     * Replaces the checks keeping the state across the files with the fresh
+     * instances, so the next file is checked as if by the fresh checker.
+     * The other checks are reused as they are.
+     *
+     * @throws CheckstyleException if the fresh check can't be configured
+     */
+    public void reset() throws CheckstyleException {
+        for (CancellableFileSetCheck check : crossFileChecks) {
+            renewed = check;
+            try {
+                super.setupChild(check.configuration);
+            } finally {
+                renewed = null;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void finishLocalSetup() throws CheckstyleException {
+        // the factory is passed to the tree walkers which create the sentinel with it
+        Set<String> packageNames = PackageNamesLoader.getPackageNames(moduleClassLoader);
+        setModuleFactory(new SentinelModuleFactory(
+                new PackageObjectFactory(packageNames, moduleClassLoader), delegatingHook));
+        super.finishLocalSetup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setupChild(Configuration childConf) throws CheckstyleException {
+        String name = childConf.getName();
+        if ("TreeWalker".equals(name) || TreeWalker.class.getName().equals(name)) { // NOI18N
+            if (profiling) {
+                setupIsolated(childConf);
+            } else {
+                super.setupChild(new SentinelConfiguration(childConf,
+                        getInspector().isCommentNodesRequired(childConf.getChildren())));
+            }
+        } else {
+            moduleConf = childConf;
+            try {
+                super.setupChild(childConf);
+            } finally {
+                moduleConf = null;
+            }
+        }
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
     public void addFileSetCheck(FileSetCheck fileSetCheck) {
-        super.addFileSetCheck(new CancellableFileSetCheck(fileSetCheck, hook));
+        if (renewed != null) {
+            // already registered, just the delegate is replaced
+            fileSetCheck.setMessageDispatcher(this);
+            renewed.renew(fileSetCheck);
+            return;
+        }
+
+        CancellableFileSetCheck cancellable = new CancellableFileSetCheck(fileSetCheck, delegatingHook,
+                moduleConf, isolatedKey, isolation);
+        if (moduleConf != null && ModuleInspector.isCrossFile(fileSetCheck)) {
+            crossFileChecks.add(cancellable);
+        }
+        fileSetChecks.add(cancellable);
+        super.addFileSetCheck(cancellable);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addBeforeExecutionFileFilter(BeforeExecutionFileFilter filter) {
+        fileFilters.add(filter);
+        super.addBeforeExecutionFileFilter(filter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeBeforeExecutionFileFilter(BeforeExecutionFileFilter filter) {
+        fileFilters.remove(filter);
+        super.removeBeforeExecutionFileFilter(filter);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCharset(String charset) throws UnsupportedEncodingException {
+        super.setCharset(charset);
+        this.charset = charset;
     }
 
     /**
@@ -68,21 +261,142 @@ public class CancellableChecker extends Checker {
         process(Collections.singletonList(file));
     }
 
+    /**
+     * Checks the given content of the file. The file itself is not read
+     * so the content may differ from the one stored on the disk.
+     *
+     * @param file the checked file
+     * @param text the content of the file
+     * @throws CheckstyleException if the check fails, typically when
+     *             the content can't be parsed
+     */
+    public void process(File file, FileText text) throws CheckstyleException {
+        String fileName = file.getAbsolutePath();
+        for (BeforeExecutionFileFilter filter : fileFilters) {
+            if (!filter.accept(fileName)) {
+                return;
+            }
+        }
+
+        for (FileSetCheck fileSetCheck : fileSetChecks) {
+            fileSetCheck.beginProcessing(charset);
+        }
+        try {
+            fireFileStarted(fileName);
+            SortedSet<Violation> violations = new TreeSet<>();
+            try {
+                for (FileSetCheck fileSetCheck : fileSetChecks) {
+                    violations.addAll(fileSetCheck.process(file, text));
+                }
+            } catch (CheckstyleException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                // the same handling as in Checker for the files on the disk
+                throw new CheckstyleException("Exception was thrown while processing " + fileName, ex);
+            }
+            fireErrors(fileName, violations);
+            fireFileFinished(fileName);
+        } finally {
+            for (FileSetCheck fileSetCheck : fileSetChecks) {
+                fileSetCheck.finishProcessing();
+            }
+        }
+    }
+
+    /**
+     * Sets up the walker running no checks at all as the baseline and
+     * the walker for each check of the given <code>TreeWalker</code>.
+     * The filters are shared by all the walkers.
+     */
+    private void setupIsolated(Configuration walkerConf) throws CheckstyleException {
+        ModuleInspector inspector = getInspector();
+        List<Configuration> checks = new ArrayList<>();
+        List<Configuration> shared = new ArrayList<>();
+        for (Configuration child : walkerConf.getChildren()) {
+            if (inspector.isReporter(child, true)) {
+                checks.add(child);
+            } else {
+                shared.add(child);
+            }
+        }
+
+        setupWalker(walkerConf, shared, null, TreeWalker.class.getName(), Isolation.BASELINE);
+        for (Configuration check : checks) {
+            setupWalker(walkerConf, shared, check, inspector.getTimingKey(check), Isolation.CHECK);
+        }
+    }
+
+    private void setupWalker(Configuration walkerConf, List<Configuration> shared,
+            Configuration check, String key, Isolation role) throws CheckstyleException {
+
+        DefaultConfiguration walker = ModuleInspector.copyModule(walkerConf);
+        for (Configuration child : shared) {
+            walker.addChild(child);
+        }
+        if (check != null) {
+            walker.addChild(check);
+        }
+
+        isolatedKey = key;
+        isolation = role;
+        try {
+            super.setupChild(new SentinelConfiguration(walker,
+                    getInspector().isCommentNodesRequired(walker.getChildren())));
+        } finally {
+            isolatedKey = null;
+            isolation = Isolation.NONE;
+        }
+    }
+
+    private ModuleInspector getInspector() {
+        if (inspector == null) {
+            inspector = new ModuleInspector(moduleClassLoader);
+        }
+        return inspector;
+    }
+
     public static interface CancellationHook {
 
         boolean isCanceled();
 
     }
 
-    private static class CancellableFileSetCheck implements FileSetCheck {
+    /**
+     * The role of the walker set up in the profiling mode.
+     */
+    private static enum Isolation {
+
+        NONE,
+
+        BASELINE,
 
-        private final FileSetCheck check;
+        CHECK
+    }
+
+    private class CancellableFileSetCheck implements FileSetCheck {
 
         private final CancellationHook hook;
 
-        public CancellableFileSetCheck(FileSetCheck check, CancellationHook hook) {
+        private final Configuration configuration;
+
+        private final Isolation isolation;
+
+        private FileSetCheck check;
+
+        private String timingKey;
+
+        public CancellableFileSetCheck(FileSetCheck check, CancellationHook hook,
+                Configuration configuration, String timingKey, Isolation isolation) {
             this.check = check;
             this.hook = hook;
+            this.configuration = configuration;
+            this.timingKey = timingKey;
+            this.isolation = isolation;
+        }
+
+        public void renew(FileSetCheck fresh) {
+            check.destroy();
+            check = fresh;
         }
 
         @Override
@@ -102,10 +416,36 @@ public class CancellableChecker extends Checker {
 
         @Override
         public SortedSet<Violation> process(File file, FileText ft) throws CheckstyleException {
-            if (hook.isCanceled()) {
+            if (hook.isCanceled() || Thread.currentThread().isInterrupted()) {
+                return EMPTY_SET;
+            }
+            try {
+                long start = System.nanoTime();
+                SortedSet<Violation> violations = check.process(file, ft);
+                long nanos = System.nanoTime() - start;
+                if (isolation == Isolation.BASELINE) {
+                    baselineNanos = nanos;
+                } else if (isolation == Isolation.CHECK) {
+                    // the parsing is reported by the baseline
+                    nanos = Math.max(0, nanos - baselineNanos);
+                }
+
+                if (timingKey == null) {
+                    // the id is known once the module is configured
+                    timingKey = ModuleTimings.getKey(check);
+                }
+                ModuleTimings.getDefault().record(timingKey, nanos);
+                if (profiling) {
+                    CheckProfiler profiler = CheckProfiler.getDefault();
+                    if (profiler.isEnabled()) {
+                        profiler.record(timingKey, file.getAbsolutePath(), nanos, violations.size());
+                    }
+                }
+                return violations;
+            } catch (CancelledException ex) {
+                LOGGER.log(Level.FINE, "Check of {0} cancelled", file);
                 return EMPTY_SET;
             }
-            return check.process(file, ft);
         }
         
         @Override
@@ -128,4 +468,187 @@ public class CancellableChecker extends Checker {
             check.beginProcessing(charset);
         }
      }
+
+    /**
+     * Thrown from the walk of the tree when the check is cancelled.
+     */
+    private static class CancelledException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public CancelledException() {
+            // there is no need for the stack trace
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * The check visiting all the nodes of the tree to stop the walk once
+     * the check is cancelled or the thread is interrupted. The walker walks
+     * the tree with the comments separately for the checks requiring them,
+     * so the sentinel takes part in just one of the walks.
+     */
+    private static class SentinelCheck extends AbstractCheck {
+
+        private static final int[] TOKENS = findTokens(false);
+
+        private static final int[] COMMENT_TOKENS = findTokens(true);
+
+        private final CancellationHook hook;
+
+        private final boolean comments;
+
+        public SentinelCheck(CancellationHook hook, boolean comments) {
+            this.hook = hook;
+            this.comments = comments;
+        }
+
+        @Override
+        public boolean isCommentNodesRequired() {
+            return comments;
+        }
+
+        @Override
+        public int[] getDefaultTokens() {
+            return getTokens();
+        }
+
+        @Override
+        public int[] getAcceptableTokens() {
+            return getTokens();
+        }
+
+        @Override
+        public int[] getRequiredTokens() {
+            return getTokens();
+        }
+
+        @Override
+        public void beginTree(DetailAST rootAST) {
+            checkCanceled();
+        }
+
+        @Override
+        public void visitToken(DetailAST ast) {
+            checkCanceled();
+        }
+
+        @Override
+        public void leaveToken(DetailAST ast) {
+            checkCanceled();
+        }
+
+        private void checkCanceled() {
+            if (hook.isCanceled() || Thread.currentThread().isInterrupted()) {
+                throw new CancelledException();
+            }
+        }
+
+        private int[] getTokens() {
+            return (comments ? COMMENT_TOKENS : TOKENS).clone();
+        }
+
+        private static int[] findTokens(boolean comments) {
+            int[] all = TokenUtil.getAllTokenIds();
+            int[] tokens = new int[all.length];
+            int count = 0;
+            for (int token : all) {
+                // comments are not present in the ordinary walk
+                if (comments || !TokenUtil.isCommentType(token)) {
+                    tokens[count++] = token;
+                }
+            }
+            return Arrays.copyOf(tokens, count);
+        }
+    }
+
+    /**
+     * Module factory creating the {@link SentinelCheck}, all other modules
+     * are created by the delegate.
+     */
+    private static class SentinelModuleFactory implements ModuleFactory {
+
+        private final ModuleFactory delegate;
+
+        private final CancellationHook hook;
+
+        public SentinelModuleFactory(ModuleFactory delegate, CancellationHook hook) {
+            this.delegate = delegate;
+            this.hook = hook;
+        }
+
+        @Override
+        public Object createModule(String name) throws CheckstyleException {
+            if (SENTINEL_NAME.equals(name)) {
+                return new SentinelCheck(hook, false);
+            }
+            if (COMMENT_SENTINEL_NAME.equals(name)) {
+                return new SentinelCheck(hook, true);
+            }
+            return delegate.createModule(name);
+        }
+    }
+
+    /**
+     * The <code>TreeWalker</code> configuration with the {@link SentinelCheck}s
+     * added as the last children. The sentinel of the walk with the comments
+     * is added only when some check requires it, otherwise it would force
+     * the walk.
+     */
+    private static class SentinelConfiguration implements Configuration {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Configuration configuration;
+
+        private final boolean comments;
+
+        public SentinelConfiguration(Configuration configuration, boolean comments) {
+            this.configuration = configuration;
+            this.comments = comments;
+        }
+
+        @Deprecated
+        @Override
+        public String[] getAttributeNames() {
+            return configuration.getAttributeNames();
+        }
+
+        @Deprecated
+        @Override
+        public String getAttribute(String name) throws CheckstyleException {
+            return configuration.getAttribute(name);
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return configuration.getPropertyNames();
+        }
+
+        @Override
+        public String getProperty(String name) throws CheckstyleException {
+            return configuration.getProperty(name);
+        }
+
+        @Override
+        public Configuration[] getChildren() {
+            Configuration[] children = configuration.getChildren();
+            Configuration[] result = Arrays.copyOf(children, children.length + (comments ? 2 : 1));
+            result[children.length] = new DefaultConfiguration(SENTINEL_NAME);
+            if (comments) {
+                result[children.length + 1] = new DefaultConfiguration(COMMENT_SENTINEL_NAME);
+            }
+            return result;
+        }
+
+        @Override
+        public String getName() {
+            return configuration.getName();
+        }
+
+        @Override
+        public Map<String, String> getMessages() {
+            return configuration.getMessages();
+        }
+    }
 }
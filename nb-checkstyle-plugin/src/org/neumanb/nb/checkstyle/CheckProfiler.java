@@ -0,0 +1,273 @@
+package org.neumanb.nb.checkstyle;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Profiler of the checkstyle modules. When enabled the checkers record
+ * the wall time, the number of invocations and the number of violations of
+ * each module for each checked file. The checks of the <code>TreeWalker</code>
+ * are isolated in their own walkers while profiling so their time can be
+ * measured separately; the time of parsing the file is reported
+ * as the <code>TreeWalker</code> itself and subtracted from the checks.
+ * <p>
+ * The profiler is disabled by default and the checkers pay only for
+ * a volatile read then. Enabling or disabling it discards the checkers
+ * pooled for the editor and cached for the task list as the profiling
+ * checkers are configured differently.
+ * <p>
+ * This class is <i>thread safe</i>.
+ */
+public final class CheckProfiler {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckProfiler.class.getName());
+
+    private static final int MAX_FILES_PER_MODULE = 10000;
+
+    private static final Comparator<Entry> TIME_COMPARATOR = new Comparator<Entry>() {
+
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            return Long.compare(o2.getTotalNanos(), o1.getTotalNanos());
+        }
+    };
+
+    private static CheckProfiler instance;
+
+    /* GuardedBy("this") */
+    private final Map<String, Entry> modules = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private final Map<String, Map<String, Entry>> files = new HashMap<>();
+
+    private volatile boolean enabled;
+
+    private CheckProfiler() {
+        super();
+    }
+
+    public static synchronized CheckProfiler getDefault() {
+        if (instance == null) {
+            instance = new CheckProfiler();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables the profiling. The pooled and the cached checkers
+     * are discarded so the next checks run with the checkers configured
+     * accordingly.
+     *
+     * @param enabled <code>true</code> to enable the profiling
+     */
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        LOGGER.log(Level.INFO, "Checkstyle profiling {0}", enabled ? "enabled" : "disabled"); // NOI18N
+        CheckerPool.getDefault().invalidate();
+        CheckerCache.clearAll();
+    }
+
+    /**
+     * Records the single invocation of the module.
+     *
+     * @param module the key of the module
+     * @param file the checked file
+     * @param nanos the wall time in nanoseconds
+     * @param violations the number of reported violations
+     */
+    public synchronized void record(String module, String file, long nanos, int violations) {
+        Entry entry = modules.get(module);
+        if (entry == null) {
+            entry = new Entry(module, null);
+            modules.put(module, entry);
+        }
+        entry.add(nanos, violations);
+
+        Map<String, Entry> moduleFiles = files.get(module);
+        if (moduleFiles == null) {
+            moduleFiles = new HashMap<>();
+            files.put(module, moduleFiles);
+        }
+        Entry fileEntry = moduleFiles.get(file);
+        if (fileEntry == null) {
+            if (moduleFiles.size() >= MAX_FILES_PER_MODULE) {
+                return;
+            }
+            fileEntry = new Entry(module, file);
+            moduleFiles.put(file, fileEntry);
+        }
+        fileEntry.add(nanos, violations);
+    }
+
+    /**
+     * Discards all the recorded data.
+     */
+    public synchronized void reset() {
+        modules.clear();
+        files.clear();
+    }
+
+    /**
+     * Returns the aggregated report of the modules ordered by the total time,
+     * the most expensive module first.
+     *
+     * @return the report of the modules
+     */
+    public synchronized List<Entry> getReport() {
+        List<Entry> result = new ArrayList<>(modules.size());
+        for (Entry entry : modules.values()) {
+            result.add(entry.copy());
+        }
+        Collections.sort(result, TIME_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * Returns the report of the files checked by the module ordered by
+     * the total time, the most expensive file first.
+     *
+     * @param module the key of the module
+     * @return the report of the files
+     */
+    public synchronized List<Entry> getReport(String module) {
+        Map<String, Entry> moduleFiles = files.get(module);
+        if (moduleFiles == null) {
+            return Collections.emptyList();
+        }
+        List<Entry> result = new ArrayList<>(moduleFiles.size());
+        for (Entry entry : moduleFiles.values()) {
+            result.add(entry.copy());
+        }
+        Collections.sort(result, TIME_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * Writes the report as CSV. Each module has the aggregated row with
+     * the empty file followed by the rows of its files.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if writing fails
+     */
+    public void exportCsv(Writer writer) throws IOException {
+        writer.write("module,file,invocations,totalMillis,meanMillis,maxMillis,violations\n"); // NOI18N
+        for (Entry module : getReport()) {
+            writeRow(writer, module);
+            for (Entry file : getReport(module.getModule())) {
+                writeRow(writer, file);
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeRow(Writer writer, Entry entry) throws IOException {
+        writer.write(quote(entry.getModule()));
+        writer.write(',');
+        writer.write(entry.getFile() != null ? quote(entry.getFile()) : "");
+        writer.write(String.format(Locale.ROOT, ",%d,%.3f,%.3f,%.3f,%d\n", // NOI18N
+                entry.getInvocations(), toMillis(entry.getTotalNanos()),
+                toMillis(entry.getMeanNanos()), toMillis(entry.getMaxNanos()),
+                entry.getViolations()));
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"'; // NOI18N
+    }
+
+    /**
+     * The recorded data of the module or of the single file checked by
+     * the module.
+     */
+    public static final class Entry {
+
+        private final String module;
+
+        private final String file;
+
+        private long invocations;
+
+        private long totalNanos;
+
+        private long maxNanos;
+
+        private long violations;
+
+        private Entry(String module, String file) {
+            this.module = module;
+            this.file = file;
+        }
+
+        public String getModule() {
+            return module;
+        }
+
+        /**
+         * Returns the checked file.
+         *
+         * @return the checked file, <code>null</code> for the aggregated entry
+         */
+        public String getFile() {
+            return file;
+        }
+
+        public long getInvocations() {
+            return invocations;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMeanNanos() {
+            return invocations > 0 ? totalNanos / invocations : 0;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getViolations() {
+            return violations;
+        }
+
+        private void add(long nanos, int count) {
+            invocations++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            violations += count;
+        }
+
+        private Entry copy() {
+            Entry result = new Entry(module, file);
+            result.invocations = invocations;
+            result.totalNanos = totalNanos;
+            result.maxNanos = maxNanos;
+            result.violations = violations;
+            return result;
+        }
+    }
+}
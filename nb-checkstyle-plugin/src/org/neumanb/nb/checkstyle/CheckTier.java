@@ -0,0 +1,22 @@
+package org.neumanb.nb.checkstyle;
+
+/**
+ * The part of the configuration the editor runs at the given time. The cheap
+ * checks run inline as the user types, the expensive ones run later in
+ * the background.
+ *
+ * @see Configuration#getTier(CheckTier)
+ */
+public enum CheckTier {
+
+    /**
+     * The latency critical checks run on every editor pass.
+     */
+    INLINE,
+
+    /**
+     * The expensive checks run with the low priority once the inline
+     * checks are finished.
+     */
+    BACKGROUND
+}
@@ -1,88 +1,340 @@
 package org.neumanb.nb.checkstyle;
 
-import com.puppycrawl.tools.checkstyle.Checker;
 import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.netbeans.api.java.classpath.ClassPath;
 import org.openide.filesystems.FileObject;
+import org.openide.util.RequestProcessor;
 
 /**
- *
+ * Cache of configured checkers keyed by the fingerprint of the configuration
+ * and the identity of the project classpath. Several checkers are kept per key so concurrent
+ * callers do not collide. The least recently used keys and the checkers idle
+ * for too long are evicted and destroyed.
+ * <p>
+ * The checkers remember the files checked since the last {@link #reset()}
+ * so the checks working across the files report each problem once per scan.
  */
 public final class CheckerCache {
 
     private static final Logger LOGGER = Logger.getLogger(CheckerCache.class.getName());
 
-    private Configuration lastConfiguration;
+    private static final RequestProcessor EVICTOR = new RequestProcessor(CheckerCache.class.getName());
 
-    private ClassLoader lastClassLoader;
+    private static final int MAX_KEYS = 8;
 
-    private Checker lastChecker;
+    private static final int MAX_CHECKERS_PER_KEY = 4;
 
-    private boolean inUse;
+    private static final int MAX_IDLE_MILLIS = 60000;
 
-    public Checker acquireChecker(FileObject fileObject, Configuration configuration) throws CheckstyleException {
-        ClassLoader classLoader = null;
-        ClassPath path = ClassPath.getClassPath(fileObject, ClassPath.EXECUTE);
-        if (path != null) {
-            classLoader = path.getClassLoader(true);
+    private static final Set<CheckerCache> INSTANCES = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<CheckerCache, Boolean>()));
+
+    /* GuardedBy("this") */
+    private final LinkedHashMap<Key, Deque<Entry>> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* GuardedBy("this") */
+    private final Map<CancellableChecker, Lease> leased = new IdentityHashMap<>();
+
+    private final RequestProcessor.Task evictionTask = EVICTOR.create(new Runnable() {
+
+        @Override
+        public void run() {
+            evictIdle();
+        }
+    });
+
+    /* GuardedBy("this") */
+    private boolean evictionScheduled;
+
+    /* GuardedBy("this") */
+    private int generation;
+
+    /* GuardedBy("this") */
+    private long hits;
+
+    /* GuardedBy("this") */
+    private long misses;
+
+    public CheckerCache() {
+        INSTANCES.add(this);
+    }
+
+    /**
+     * Clears all the existing caches.
+     *
+     * @see #clear()
+     */
+    public static void clearAll() {
+        List<CheckerCache> caches;
+        synchronized (INSTANCES) {
+            caches = new ArrayList<>(INSTANCES);
+        }
+        for (CheckerCache cache : caches) {
+            cache.clear();
+        }
+    }
+
+    public CancellableChecker acquireChecker(FileObject fileObject, Configuration configuration)
+            throws CheckstyleException {
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_ACQUIRE)
+                .setFile(fileObject.getPath());
+        try {
+            return acquireChecker(fileObject, configuration, span);
+        } finally {
+            span.commit();
         }
+    }
 
+    private CancellableChecker acquireChecker(FileObject fileObject, Configuration configuration,
+            CheckstyleEvents.Span span) throws CheckstyleException {
+
+        // the identity is enough, the class loader of the classpath is not needed
+        ClassPath path = ClassPath.getClassPath(fileObject, ClassPath.EXECUTE);
+
+        Key key = new Key(configuration, path);
+        Entry entry = null;
+        int current;
         synchronized (this) {
-            if ((lastClassLoader == classLoader || (lastClassLoader != null && lastClassLoader.equals(classLoader)))
-                    && configuration.equals(lastConfiguration) && !inUse) {
+            current = generation;
+            Deque<Entry> entries = idle.get(key);
+            if (entries != null && !entries.isEmpty()) {
+                entry = entries.pop();
+                if (entries.isEmpty()) {
+                    idle.remove(key);
+                }
+                leased.put(entry.checker, new Lease(key, current));
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        if (entry != null) {
+            if (entry.generation == current || reset(entry.checker)) {
+                span.setCacheHit(true);
+                CheckstyleMetrics.getDefault().recordLease(CheckstyleMetrics.Path.TASK_LIST, true);
                 if (LOGGER.isLoggable(Level.FINE)) {
                     LOGGER.log(Level.FINE, "Cache hit for {0}", fileObject.getNameExt());
                 }
-                inUse = true;
-                return lastChecker;
-            } else if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.log(Level.FINE, "Cache miss for {0}", fileObject.getNameExt());
+                return entry.checker;
+            }
+            synchronized (this) {
+                leased.remove(entry.checker);
             }
+            entry.checker.destroy();
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Cache miss for {0}", fileObject.getNameExt());
         }
+        CheckstyleMetrics.getDefault().recordLease(CheckstyleMetrics.Path.TASK_LIST, false);
 
-        Checker freshChecker = new Checker();
         // classloader to load checks
-        freshChecker.setModuleClassLoader(configuration.getCheckstyleClassLoader());
-        // classloader to load classpath
-        //freshChecker.setClassloader(classLoader);
+        CancellableChecker freshChecker = new CancellableChecker(null,
+                configuration.getCheckstyleClassLoader());
 
-        freshChecker.configure(configuration.getCheckstyleConfiguration());
+        CheckstyleEvents.Span configureSpan = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_CONFIGURE);
+        try {
+            freshChecker.configure(configuration.getCheckstyleConfiguration());
+        } finally {
+            configureSpan.commit();
+        }
 
         synchronized (this) {
-            lastConfiguration = configuration;
-            lastClassLoader = classLoader;
-            lastChecker = freshChecker;
-            inUse = true;
+            leased.put(freshChecker, new Lease(key, current));
         }
 
         return freshChecker;
     }
 
-    public void releaseChecker(Checker checker) {
+    public void releaseChecker(CancellableChecker checker) {
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_RELEASE);
+        List<CancellableChecker> evicted = new ArrayList<>();
+        boolean schedule = false;
         synchronized (this) {
-            if (checker.equals(lastChecker)) {
-                inUse = false;
+            Lease lease = leased.remove(checker);
+            if (lease == null) {
+                // the cache has been cleared meanwhile
+                evicted.add(checker);
             } else {
-                checker.destroy();
+                Deque<Entry> entries = idle.get(lease.key);
+                if (entries == null) {
+                    entries = new ArrayDeque<>(MAX_CHECKERS_PER_KEY);
+                    idle.put(lease.key, entries);
+                }
+                if (entries.size() < MAX_CHECKERS_PER_KEY) {
+                    entries.push(new Entry(checker, System.currentTimeMillis(), lease.generation));
+                    if (!evictionScheduled) {
+                        evictionScheduled = true;
+                        schedule = true;
+                    }
+                } else {
+                    evicted.add(checker);
+                }
+
+                Iterator<Deque<Entry>> it = idle.values().iterator();
+                while (idle.size() > MAX_KEYS && it.hasNext()) {
+                    for (Entry entry : it.next()) {
+                        evicted.add(entry.checker);
+                    }
+                    it.remove();
+                }
             }
         }
+        destroy(evicted);
+        if (schedule) {
+            evictionTask.schedule(MAX_IDLE_MILLIS);
+        }
+        span.commit();
+    }
+
+    /**
+     * Makes the checkers forget the files checked so far. Called once
+     * the scan finishes; the checkers are reset before they are leased
+     * the next time.
+     *
+     * @see CancellableChecker#reset()
+     */
+    public synchronized void reset() {
+        generation++;
     }
 
     public void clear() {
-        Checker current;
+        List<CancellableChecker> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Deque<Entry> entries : idle.values()) {
+                for (Entry entry : entries) {
+                    evicted.add(entry.checker);
+                }
+            }
+            idle.clear();
+            // leased checkers are destroyed on release
+            leased.clear();
+        }
+        destroy(evicted);
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private void evictIdle() {
+        long threshold = System.currentTimeMillis() - MAX_IDLE_MILLIS;
+        List<CancellableChecker> evicted = new ArrayList<>();
+        boolean schedule;
         synchronized (this) {
-           current = lastChecker;
+            for (Iterator<Deque<Entry>> it = idle.values().iterator(); it.hasNext();) {
+                Deque<Entry> entries = it.next();
+                // the oldest entries are at the tail
+                while (!entries.isEmpty() && entries.peekLast().released <= threshold) {
+                    evicted.add(entries.removeLast().checker);
+                }
+                if (entries.isEmpty()) {
+                    it.remove();
+                }
+            }
+            // the eviction runs periodically while anything is idle
+            schedule = !idle.isEmpty();
+            evictionScheduled = schedule;
+        }
+        if (LOGGER.isLoggable(Level.FINE) && !evicted.isEmpty()) {
+            LOGGER.log(Level.FINE, "Evicting {0} idle checkers", evicted.size());
+        }
+        destroy(evicted);
+        if (schedule) {
+            evictionTask.schedule(MAX_IDLE_MILLIS);
+        }
+    }
 
-           lastConfiguration = null;
-           lastClassLoader = null;
-           lastChecker = null;
-           inUse = false;
+    private static boolean reset(CancellableChecker checker) {
+        try {
+            checker.reset();
+            return true;
+        } catch (CheckstyleException ex) {
+            LOGGER.log(Level.FINE, "Checker can't be reset", ex);
+            return false;
         }
-        if (current != null) {
-            current.destroy();
+    }
+
+    private static void destroy(List<CancellableChecker> checkers) {
+        for (CancellableChecker checker : checkers) {
+            checker.destroy();
         }
     }
 
+    private static final class Key {
+
+        private final Configuration configuration;
+
+        private final ClassPath classPath;
+
+        public Key(Configuration configuration, ClassPath classPath) {
+            this.configuration = configuration;
+            this.classPath = classPath;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            // the configuration split again runs the same checks
+            Configuration otherConfiguration = other.configuration;
+            return configuration.getFingerprint() == otherConfiguration.getFingerprint()
+                    && configuration.getCheckstyleClassLoader() == otherConfiguration.getCheckstyleClassLoader()
+                    && classPath == other.classPath;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + Long.hashCode(configuration.getFingerprint());
+            hash = 53 * hash + System.identityHashCode(classPath);
+            return hash;
+        }
+    }
+
+    private static final class Lease {
+
+        private final Key key;
+
+        private final int generation;
+
+        public Lease(Key key, int generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Entry {
+
+        private final CancellableChecker checker;
+
+        private final long released;
+
+        private final int generation;
+
+        public Entry(CancellableChecker checker, long released, int generation) {
+            this.checker = checker;
+            this.released = released;
+            this.generation = generation;
+        }
+    }
 }
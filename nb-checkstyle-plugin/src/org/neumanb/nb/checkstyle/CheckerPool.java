@@ -0,0 +1,241 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of already configured {@link CancellableChecker}s. Configuring
+ * the checker instantiates all modules and loads the external resources
+ * such as suppression files or headers, so the checkers are leased per run
+ * and reused as long as the configuration does not change. Each
+ * {@link CheckTier} has its own checkers as they run different checks.
+ * <p>
+ * The pool is invalidated by the {@link ConfigurationLoader} whenever
+ * the configuration is reloaded. When the same configuration is only split
+ * into the tiers again the checkers of the unchanged tiers are kept.
+ */
+public final class CheckerPool {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckerPool.class.getName());
+
+    private static final int MAX_IDLE_CHECKERS = 4;
+
+    private static CheckerPool instance;
+
+    // keyed by the fingerprint of the tier configuration
+    /* GuardedBy("this") */
+    private final Map<Long, Deque<CancellableChecker>> idle = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private final Map<CancellableChecker, Configuration> leased = new IdentityHashMap<>();
+
+    /* GuardedBy("this") */
+    private Configuration root;
+
+    /* GuardedBy("this") */
+    private long hits;
+
+    /* GuardedBy("this") */
+    private long misses;
+
+    private CheckerPool() {
+        super();
+    }
+
+    public static synchronized CheckerPool getDefault() {
+        if (instance == null) {
+            instance = new CheckerPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Leases the configured checker for the given configuration. The checker
+     * must be returned by {@link #releaseChecker(CancellableChecker)}.
+     *
+     * @param configuration the configuration the checker has to use
+     * @param hook the hook consulted for the cancellation
+     * @return the configured checker
+     * @throws CheckstyleException if the checker can't be configured
+     */
+    public CancellableChecker acquireChecker(Configuration configuration,
+            CancellableChecker.CancellationHook hook) throws CheckstyleException {
+
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_ACQUIRE);
+        try {
+            return acquireChecker(configuration, hook, span);
+        } finally {
+            span.commit();
+        }
+    }
+
+    private CancellableChecker acquireChecker(Configuration configuration,
+            CancellableChecker.CancellationHook hook, CheckstyleEvents.Span span) throws CheckstyleException {
+
+        List<CancellableChecker> stale = null;
+        synchronized (this) {
+            if (configuration.getRoot() != root) {
+                stale = retain(configuration.getRoot());
+                root = configuration.getRoot();
+            }
+
+            Deque<CancellableChecker> checkers = idle.get(configuration.getFingerprint());
+            CancellableChecker checker = checkers != null ? checkers.poll() : null;
+            if (checker != null) {
+                hits++;
+                span.setCacheHit(true);
+                CheckstyleMetrics.getDefault().recordLease(CheckstyleMetrics.Path.EDITOR, true);
+                LOGGER.log(Level.FINE, "Pool hit ({0} hits, {1} misses)", new Object[] {hits, misses});
+                checker.setCancellationHook(hook);
+                leased.put(checker, configuration);
+                return checker;
+            }
+
+            misses++;
+            LOGGER.log(Level.FINE, "Pool miss ({0} hits, {1} misses)", new Object[] {hits, misses});
+        }
+        CheckstyleMetrics.getDefault().recordLease(CheckstyleMetrics.Path.EDITOR, false);
+        destroy(stale);
+
+        // classloader to load checks
+        CancellableChecker freshChecker = new CancellableChecker(hook,
+                configuration.getCheckstyleClassLoader());
+        CheckstyleEvents.Span configureSpan = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_CONFIGURE);
+        try {
+            freshChecker.configure(configuration.getCheckstyleConfiguration());
+        } finally {
+            configureSpan.commit();
+        }
+
+        synchronized (this) {
+            leased.put(freshChecker, configuration);
+        }
+        return freshChecker;
+    }
+
+    /**
+     * Returns the leased checker to the pool. The checker is reset so it is
+     * not bound to the task that leased it and does not remember the checked
+     * file. When the configuration has changed in the meantime, the pool is
+     * full or the checker can't be reset the checker is destroyed.
+     *
+     * @param checker the checker to return
+     */
+    public void releaseChecker(CancellableChecker checker) {
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.CHECKER_RELEASE);
+        checker.setCancellationHook(null);
+        boolean reset = true;
+        try {
+            checker.reset();
+        } catch (CheckstyleException ex) {
+            LOGGER.log(Level.FINE, "Checker can't be reset", ex);
+            reset = false;
+        }
+
+        synchronized (this) {
+            Configuration owner = leased.remove(checker);
+            if (reset && owner != null && owner.getRoot() == root) {
+                Deque<CancellableChecker> checkers = idle.get(owner.getFingerprint());
+                if (checkers == null) {
+                    checkers = new ArrayDeque<>();
+                    idle.put(owner.getFingerprint(), checkers);
+                }
+                if (checkers.size() < MAX_IDLE_CHECKERS) {
+                    checkers.push(checker);
+                    span.setCacheHit(true).commit();
+                    return;
+                }
+            }
+        }
+        checker.destroy();
+        span.commit();
+    }
+
+    /**
+     * Destroys all idle checkers. The leased ones are destroyed once they
+     * are released.
+     */
+    public void invalidate() {
+        List<CancellableChecker> stale;
+        synchronized (this) {
+            stale = clear();
+            root = null;
+        }
+        destroy(stale);
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Removes the idle checkers not used by any tier of the given configuration.
+     * All of them are removed unless the configuration only splits the checks
+     * of the current one again.
+     */
+    /* GuardedBy("this") */
+    private List<CancellableChecker> retain(Configuration fresh) {
+        if (root == null || root.getFingerprint() != fresh.getFingerprint()
+                || root.getCheckstyleClassLoader() != fresh.getCheckstyleClassLoader()) {
+            return clear();
+        }
+
+        Set<Long> fingerprints = new HashSet<>();
+        for (CheckTier tier : CheckTier.values()) {
+            Configuration tierConfiguration = fresh.getTier(tier);
+            if (tierConfiguration != null) {
+                fingerprints.add(tierConfiguration.getFingerprint());
+                // the editor runs the cached and the other checks separately
+                fingerprints.add(tierConfiguration.getPerFileChecks().getFingerprint());
+                if (tierConfiguration.getCrossFileChecks() != null) {
+                    fingerprints.add(tierConfiguration.getCrossFileChecks().getFingerprint());
+                }
+            }
+        }
+
+        List<CancellableChecker> stale = new ArrayList<>();
+        for (Iterator<Map.Entry<Long, Deque<CancellableChecker>>> it = idle.entrySet().iterator();
+                it.hasNext();) {
+            Map.Entry<Long, Deque<CancellableChecker>> entry = it.next();
+            if (!fingerprints.contains(entry.getKey())) {
+                stale.addAll(entry.getValue());
+                it.remove();
+            }
+        }
+        return stale;
+    }
+
+    /* GuardedBy("this") */
+    private List<CancellableChecker> clear() {
+        List<CancellableChecker> stale = new ArrayList<>();
+        for (Deque<CancellableChecker> checkers : idle.values()) {
+            stale.addAll(checkers);
+        }
+        idle.clear();
+        return stale;
+    }
+
+    private static void destroy(List<CancellableChecker> checkers) {
+        if (checkers == null) {
+            return;
+        }
+        for (CancellableChecker checker : checkers) {
+            checker.destroy();
+        }
+    }
+}
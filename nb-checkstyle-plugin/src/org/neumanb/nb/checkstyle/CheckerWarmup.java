@@ -0,0 +1,177 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Warms up the checking infrastructure in the background so the first
+ * editor pass does not pay for the configuration parsing, class loading and
+ * module instantiation. The warmed checker is returned to the
+ * {@link CheckerPool} where the editor task picks it up.
+ */
+public final class CheckerWarmup implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckerWarmup.class.getName());
+
+    private static final String PROP_WARMUP_DISABLED =
+        "org.neumanb.nb.checkstyle.warmup.disabled"; // NOI18N
+
+    private static final RequestProcessor WARMUP = new RequestProcessor(CheckerWarmup.class.getName(), 1);
+
+    private static final int ITERATIONS = 3;
+
+    private static final String SOURCE = "package warmup;\n" // NOI18N
+            + "\n" // NOI18N
+            + "import java.util.ArrayList;\n" // NOI18N
+            + "import java.util.List;\n" // NOI18N
+            + "\n" // NOI18N
+            + "/**\n" // NOI18N
+            + " * Warm up.\n" // NOI18N
+            + " */\n" // NOI18N
+            + "public class Warmup {\n" // NOI18N
+            + "\n" // NOI18N
+            + "    private static final int LIMIT = 10;\n" // NOI18N
+            + "\n" // NOI18N
+            + "    private final List<String> values = new ArrayList<String>();\n" // NOI18N
+            + "\n" // NOI18N
+            + "    /**\n" // NOI18N
+            + "     * Adds the value.\n" // NOI18N
+            + "     *\n" // NOI18N
+            + "     * @param value the value\n" // NOI18N
+            + "     * @return the count\n" // NOI18N
+            + "     */\n" // NOI18N
+            + "    public int add(String value) {\n" // NOI18N
+            + "        for (int i = 0; i < LIMIT; i++) {\n" // NOI18N
+            + "            if (value != null && values.size() < i) {\n" // NOI18N
+            + "                values.add(value);\n" // NOI18N
+            + "            }\n" // NOI18N
+            + "        }\n" // NOI18N
+            + "        return values.size();\n" // NOI18N
+            + "    }\n" // NOI18N
+            + "}\n"; // NOI18N
+
+    private static CheckerWarmup instance;
+
+    private final long created = System.nanoTime();
+
+    /* GuardedBy("this") */
+    private long warmupMillis = -1;
+
+    /* GuardedBy("this") */
+    private long firstCheckMillis = -1;
+
+    private CheckerWarmup() {
+        super();
+    }
+
+    public static synchronized CheckerWarmup getDefault() {
+        if (instance == null) {
+            instance = new CheckerWarmup();
+        }
+        return instance;
+    }
+
+    /**
+     * Schedules the warm up with the low priority.
+     */
+    public void start() {
+        if (Boolean.getBoolean(PROP_WARMUP_DISABLED)) {
+            return;
+        }
+        WARMUP.post(this, 0, Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Returns the time the warm up took.
+     *
+     * @return the time the warm up took in milliseconds or <code>-1</code>
+     *             if it has not finished
+     */
+    public synchronized long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    /**
+     * Returns the time from the module start to the first finished editor
+     * check.
+     *
+     * @return time to the first check in milliseconds or <code>-1</code>
+     *             if no check has finished yet
+     */
+    public synchronized long getFirstCheckMillis() {
+        return firstCheckMillis;
+    }
+
+    /**
+     * Records the first finished editor check.
+     */
+    public void firstCheckFinished() {
+        synchronized (this) {
+            if (firstCheckMillis >= 0) {
+                return;
+            }
+            firstCheckMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - created);
+        }
+        LOGGER.log(Level.INFO, "First Checkstyle check finished {0} ms after start", firstCheckMillis);
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        File file = null;
+        ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Configuration config = ConfigurationLoader.getDefault().getConfiguration();
+            long loaded = System.nanoTime();
+
+            file = File.createTempFile("checkstyle-warmup", ".java"); // NOI18N
+            OutputStream os = new FileOutputStream(file);
+            try {
+                os.write(SOURCE.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                os.close();
+            }
+
+            Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
+            CheckerPool pool = CheckerPool.getDefault();
+            // the editor picks up the checker of the inline tier first
+            CancellableChecker checker = pool.acquireChecker(
+                    config.getTier(CheckTier.INLINE).getPerFileChecks(), null);
+            long configured = System.nanoTime();
+            try {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    checker.process(file);
+                }
+            } finally {
+                pool.releaseChecker(checker);
+            }
+            long finished = System.nanoTime();
+
+            synchronized (this) {
+                warmupMillis = TimeUnit.NANOSECONDS.toMillis(finished - start);
+            }
+            LOGGER.log(Level.INFO, "Checkstyle warm up finished in {0} ms (configuration {1} ms, checker {2} ms, checks {3} ms)",
+                    new Object[] {warmupMillis, TimeUnit.NANOSECONDS.toMillis(loaded - start),
+                        TimeUnit.NANOSECONDS.toMillis(configured - loaded),
+                        TimeUnit.NANOSECONDS.toMillis(finished - configured)});
+        } catch (CheckstyleException ex) {
+            // reported to the user once the real check runs
+            LOGGER.log(Level.FINE, null, ex);
+        } catch (IOException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+        } finally {
+            Thread.currentThread().setContextClassLoader(originalClassLoader);
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.neumanb.nb.checkstyle;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits the Java Flight Recorder events of the checking pipeline. The events
+ * are created only when the flight recorder is available in the running JVM
+ * and the event type is enabled in the recording, otherwise the callers get
+ * the shared span doing nothing.
+ * <p>
+ * The events are enabled selectively by the settings profile
+ * <code>org/neumanb/nb/checkstyle/resources/checkstyle.jfc</code>; the frequent
+ * ones are disabled unless the profile enables them.
+ * <p>
+ * This class is <i>thread safe</i>, the spans are not.
+ */
+public final class CheckstyleEvents {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckstyleEvents.class.getName());
+
+    private static final Span DISABLED = new Span() {
+
+        @Override
+        public Span setFile(String file) {
+            return this;
+        }
+
+        @Override
+        public Span setFileSize(long size) {
+            return this;
+        }
+
+        @Override
+        public Span setViolations(int count) {
+            return this;
+        }
+
+        @Override
+        public Span setCacheHit(boolean hit) {
+            return this;
+        }
+
+        @Override
+        public Span setCancelled(boolean cancelled) {
+            return this;
+        }
+
+        @Override
+        public void commit() {
+            // noop
+        }
+    };
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private CheckstyleEvents() {
+        super();
+    }
+
+    /**
+     * Starts the event of the given type. The returned span has to be
+     * committed by the caller once the measured operation finishes.
+     *
+     * @param type the type of the event
+     * @return the started span, never <code>null</code>
+     */
+    public static Span begin(Type type) {
+        if (!AVAILABLE) {
+            return DISABLED;
+        }
+        Span span = JfrEvents.begin(type);
+        return span != null ? span : DISABLED;
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event"); // NOI18N
+            return JfrEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError ex) {
+            // older JVM, the events are not emitted at all
+            LOGGER.log(Level.FINE, "Flight recorder not available", ex);
+            return false;
+        }
+    }
+
+    /**
+     * The types of the events.
+     */
+    public static enum Type {
+
+        /** The reload of the configuration. */
+        CONFIGURATION_RELOAD,
+
+        /** The lease of the checker, carries the cache hit. */
+        CHECKER_ACQUIRE,
+
+        /** The return of the checker. */
+        CHECKER_RELEASE,
+
+        /** The configuration of the fresh checker. */
+        CHECKER_CONFIGURE,
+
+        /** The check of the single file. */
+        PROCESS,
+
+        /** The resolution of the violation lines to the document positions. */
+        POSITION_RESOLVE,
+
+        /** The attach of the annotations to the document. */
+        ANNOTATION_ATTACH,
+
+        /** The detach of the annotations from the document. */
+        ANNOTATION_DETACH
+    }
+
+    /**
+     * The running event. The values not set are recorded as zero,
+     * <code>null</code> or <code>false</code>.
+     */
+    public static interface Span {
+
+        Span setFile(String file);
+
+        Span setFileSize(long size);
+
+        /**
+         * Sets the number of the violations, for the annotation events
+         * the number of the annotations.
+         *
+         * @param count the number of the violations
+         * @return this span
+         */
+        Span setViolations(int count);
+
+        Span setCacheHit(boolean hit);
+
+        Span setCancelled(boolean cancelled);
+
+        /**
+         * Ends the span and commits the event if it passes the settings
+         * of the recording such as the threshold.
+         */
+        void commit();
+    }
+}
@@ -2,33 +2,29 @@ package org.neumanb.nb.checkstyle;
 
 import com.puppycrawl.tools.checkstyle.api.AuditEvent;
 import com.puppycrawl.tools.checkstyle.api.AuditListener;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *
+ * Listener collecting the violations of the included severity to
+ * the {@link ViolationStore}.
  */
-public abstract class CheckstyleListener<T> implements AuditListener {
+public class CheckstyleListener implements AuditListener {
 
     private static final Logger LOGGER = Logger.getLogger(CheckstyleListener.class.getName());
 
     private final Severity minimalSeverity;
 
-    /* GuardedBy("this") */
-    private final List<T> results = new ArrayList<>();
+    private final ViolationStore violations = new ViolationStore();
 
     public CheckstyleListener(Severity minimalSeverity) {
         this.minimalSeverity = minimalSeverity;
     }
 
-    public synchronized final List<T> getResults() {
-        return results;
+    public final ViolationStore getViolations() {
+        return violations;
     }
 
-    public abstract T createResult(AuditEvent evt);
-
     @Override
     public final void addError(AuditEvent evt) {
         if (LOGGER.isLoggable(Level.FINEST)) {
@@ -40,12 +36,9 @@ public abstract class CheckstyleListener<T> implements AuditListener {
         }
 
         if (minimalSeverity.include(evt.getSeverityLevel())) {
-            T result = createResult(evt);
-            if (result != null) {
-                synchronized (this) {
-                    results.add(result);
-                }
-            }
+            String source = evt.getModuleId() != null ? evt.getModuleId() : evt.getSourceName();
+            violations.add(evt.getLine(), evt.getColumn(), evt.getSeverityLevel(), source,
+                    evt.getMessage());
         }
     }
 
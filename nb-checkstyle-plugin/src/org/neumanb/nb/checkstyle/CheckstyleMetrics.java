@@ -0,0 +1,266 @@
+package org.neumanb.nb.checkstyle;
+
+import org.neumanb.nb.checkstyle.editor.CheckScheduler;
+import org.neumanb.nb.checkstyle.editor.CheckstyleAnnotationContainer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of the plugin exposed as the MBean
+ * <code>org.neumanb.nb.checkstyle:type=CheckstyleMetrics</code>. The counters
+ * and histograms are lock free so recording them does not slow down
+ * the checks; the values owned by other components such as the queue
+ * depth are read only when the attribute is requested.
+ * <p>
+ * This class is <i>thread safe</i>.
+ */
+public final class CheckstyleMetrics implements CheckstyleMetricsMBean {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckstyleMetrics.class.getName());
+
+    private static final String OBJECT_NAME = "org.neumanb.nb.checkstyle:type=CheckstyleMetrics"; // NOI18N
+
+    // eagerly created, the recording must not take the lock
+    private static final CheckstyleMetrics INSTANCE = new CheckstyleMetrics();
+
+    private final Map<Path, LatencyHistogram> checks = new EnumMap<>(Path.class);
+
+    private final Map<Path, LongAdder> leaseHits = new EnumMap<>(Path.class);
+
+    private final Map<Path, LongAdder> leaseMisses = new EnumMap<>(Path.class);
+
+    private final LatencyHistogram reloads = new LatencyHistogram();
+
+    private final LongAdder cancelledChecks = new LongAdder();
+
+    private final LongAdder cancelledCpuNanos = new LongAdder();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+
+    private CheckstyleMetrics() {
+        for (Path path : Path.values()) {
+            checks.put(path, new LatencyHistogram());
+            leaseHits.put(path, new LongAdder());
+            leaseMisses.put(path, new LongAdder());
+        }
+    }
+
+    public static CheckstyleMetrics getDefault() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the MBean to the platform MBean server.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ex) {
+            LOGGER.log(Level.FINE, null, ex);
+        } catch (JMException | SecurityException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+        }
+    }
+
+    /**
+     * Unregisters the MBean from the platform MBean server.
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException ex) {
+            LOGGER.log(Level.FINE, null, ex);
+        } catch (JMException | SecurityException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+        }
+    }
+
+    /**
+     * Records the check of the single file including the cached ones.
+     *
+     * @param path the path the check comes from
+     * @param nanos the wall time of the check
+     */
+    public void recordCheck(Path path, long nanos) {
+        checks.get(path).record(nanos);
+    }
+
+    /**
+     * Records the lease of the checker.
+     *
+     * @param path the path leasing the checker
+     * @param hit <code>true</code> if the configured checker was reused
+     */
+    public void recordLease(Path path, boolean hit) {
+        (hit ? leaseHits : leaseMisses).get(path).increment();
+    }
+
+    public void recordReload(long nanos) {
+        reloads.record(nanos);
+    }
+
+    /**
+     * Records the editor check cancelled or superseded before it published
+     * its results. The time it took was wasted.
+     *
+     * @param cpuNanos the CPU time of the check
+     */
+    public void recordCancelledCheck(long cpuNanos) {
+        cancelledChecks.increment();
+        cancelledCpuNanos.add(Math.max(0, cpuNanos));
+    }
+
+    /**
+     * Returns the CPU time of the current thread.
+     *
+     * @return the CPU time in nanoseconds or -1 if it is not available
+     */
+    public long getCurrentThreadCpuTime() {
+        if (!cpuTimeSupported) {
+            return -1;
+        }
+        try {
+            return threads.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException ex) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long getEditorCheckCount() {
+        return checks.get(Path.EDITOR).getCount();
+    }
+
+    @Override
+    public double getEditorMeanMillis() {
+        return toMillis(checks.get(Path.EDITOR).getMeanNanos());
+    }
+
+    @Override
+    public double getEditorP99Millis() {
+        return toMillis(checks.get(Path.EDITOR).getPercentileNanos(99));
+    }
+
+    @Override
+    public long getTaskListCheckCount() {
+        return checks.get(Path.TASK_LIST).getCount();
+    }
+
+    @Override
+    public double getTaskListMeanMillis() {
+        return toMillis(checks.get(Path.TASK_LIST).getMeanNanos());
+    }
+
+    @Override
+    public double getTaskListP99Millis() {
+        return toMillis(checks.get(Path.TASK_LIST).getPercentileNanos(99));
+    }
+
+    @Override
+    public long getCancelledCheckCount() {
+        return cancelledChecks.sum();
+    }
+
+    @Override
+    public double getCancelledCheckCpuMillis() {
+        return toMillis(cancelledCpuNanos.sum());
+    }
+
+    @Override
+    public double getCheckerCacheHitRatio() {
+        return getHitRatio(Path.TASK_LIST);
+    }
+
+    @Override
+    public double getCheckerPoolHitRatio() {
+        return getHitRatio(Path.EDITOR);
+    }
+
+    @Override
+    public int getAnnotationContainerCount() {
+        return CheckstyleAnnotationContainer.getContainerCount();
+    }
+
+    @Override
+    public int getAnnotationCount() {
+        return CheckstyleAnnotationContainer.getAnnotationCount();
+    }
+
+    @Override
+    public int getEditorQueueDepth() {
+        return CheckScheduler.getDefault().getQueueDepth();
+    }
+
+    @Override
+    public long getConfigurationReloadCount() {
+        return reloads.getCount();
+    }
+
+    @Override
+    public double getConfigurationReloadMeanMillis() {
+        return toMillis(reloads.getMeanNanos());
+    }
+
+    @Override
+    public double getConfigurationReloadMaxMillis() {
+        return toMillis(reloads.getMaxNanos());
+    }
+
+    @Override
+    public void resetCounters() {
+        for (Path path : Path.values()) {
+            checks.get(path).reset();
+            leaseHits.get(path).reset();
+            leaseMisses.get(path).reset();
+        }
+        reloads.reset();
+        cancelledChecks.reset();
+        cancelledCpuNanos.reset();
+        LOGGER.log(Level.INFO, "Checkstyle metrics reset"); // NOI18N
+    }
+
+    @Override
+    public void clearCaches() {
+        CheckerPool.getDefault().invalidate();
+        CheckerCache.clearAll();
+        ViolationCache.getDefault().clear();
+        LOGGER.log(Level.INFO, "Checkstyle caches cleared"); // NOI18N
+    }
+
+    private double getHitRatio(Path path) {
+        long hits = leaseHits.get(path).sum();
+        long total = hits + leaseMisses.get(path).sum();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * The paths running the checks.
+     */
+    public static enum Path {
+
+        /** The checks of the opened editors. */
+        EDITOR,
+
+        /** The checks of the task list scanner. */
+        TASK_LIST
+    }
+}
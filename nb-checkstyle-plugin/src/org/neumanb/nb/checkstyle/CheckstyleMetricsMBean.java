@@ -0,0 +1,72 @@
+package org.neumanb.nb.checkstyle;
+
+/**
+ * The management interface of the {@link CheckstyleMetrics}. The latencies
+ * are in milliseconds.
+ */
+public interface CheckstyleMetricsMBean {
+
+    long getEditorCheckCount();
+
+    double getEditorMeanMillis();
+
+    double getEditorP99Millis();
+
+    long getTaskListCheckCount();
+
+    double getTaskListMeanMillis();
+
+    double getTaskListP99Millis();
+
+    /**
+     * Returns the number of the editor checks cancelled or superseded
+     * while running.
+     *
+     * @return the number of the cancelled checks
+     */
+    long getCancelledCheckCount();
+
+    /**
+     * Returns the CPU time spent by the cancelled editor checks. Where
+     * the thread CPU time is not available the wall time is counted.
+     *
+     * @return the wasted time in milliseconds
+     */
+    double getCancelledCheckCpuMillis();
+
+    /**
+     * Returns the hit ratio of the checkers leased by the task list.
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    double getCheckerCacheHitRatio();
+
+    /**
+     * Returns the hit ratio of the checkers leased by the editor.
+     *
+     * @return the hit ratio between 0 and 1
+     */
+    double getCheckerPoolHitRatio();
+
+    int getAnnotationContainerCount();
+
+    int getAnnotationCount();
+
+    int getEditorQueueDepth();
+
+    long getConfigurationReloadCount();
+
+    double getConfigurationReloadMeanMillis();
+
+    double getConfigurationReloadMaxMillis();
+
+    /**
+     * Resets all the counters and histograms.
+     */
+    void resetCounters();
+
+    /**
+     * Destroys the cached checkers and deletes the cached violations.
+     */
+    void clearCaches();
+}
@@ -25,6 +25,9 @@ public class CheckstyleModule extends ModuleInstall {
 
     @Override
     public void restored() {
+        CheckerWarmup.getDefault().start();
+        CheckstyleMetrics.getDefault().register();
+
         final Preferences prefs = NbPreferences.forModule(CheckstyleModule.class);
         boolean shown = prefs.getBoolean(PROP_CHECKSTYLE_MESSAGE56_SHOWN, false);
         if (!shown && CheckstyleSettings.getDefault().getValues().getCustomConfigFile() != null) {
@@ -47,6 +50,8 @@ public class CheckstyleModule extends ModuleInstall {
     @Override
     public void uninstalled() {
         CheckstyleAnnotationContainer.reset();
+        CheckerPool.getDefault().invalidate();
+        CheckstyleMetrics.getDefault().unregister();
     }
 
     private static Dimension getPreferredSize(String html, int width) {
@@ -50,6 +50,33 @@ public final class CheckstyleSettings {
     static final String PROP_IGNORED_PATHS_PATTERN =
         "org.neumanb.nb.checkstyle.ignoredPathsPattern"; // NOI18N
 
+    static final String PROP_CHECK_MODIFIED =
+        "org.neumanb.nb.checkstyle.checkModified"; // NOI18N
+
+    static final String PROP_CHECK_DELAY =
+        "org.neumanb.nb.checkstyle.checkDelay"; // NOI18N
+
+    static final String PROP_AGGREGATE_LINES =
+        "org.neumanb.nb.checkstyle.aggregateLines"; // NOI18N
+
+    static final String PROP_BACKGROUND_CHECKS =
+        "org.neumanb.nb.checkstyle.backgroundChecks"; // NOI18N
+
+    static final String PROP_PARALLEL_SCAN =
+        "org.neumanb.nb.checkstyle.parallelScan"; // NOI18N
+
+    /**
+     * Default delay of the check of the modified document in milliseconds.
+     */
+    public static final int DEFAULT_CHECK_DELAY = 300;
+
+    /**
+     * Default checks run in the background as they are known to be expensive.
+     */
+    public static final String DEFAULT_BACKGROUND_CHECKS =
+            "JavadocMethod, JavadocStyle, JavadocType, JavadocVariable, JavadocPackage, " // NOI18N
+            + "MissingJavadocMethod, RegexpSingleline, Header"; // NOI18N
+
     private static final Logger LOGGER = Logger.getLogger(CheckstyleSettings.class.getName());
 
     private static CheckstyleSettings instance;
@@ -94,6 +121,11 @@ public final class CheckstyleSettings {
             setCustomClasspath(values.getCustomClasspath(), events);
             setCustomProperties(values.getCustomProperties(), events);
             setIgnoredPathsPattern(values.getIgnoredPathsPattern(), events);
+            setCheckModified(values.isCheckModified(), events);
+            setCheckDelay(values.getCheckDelay(), events);
+            setAggregateLines(values.isAggregateLines(), events);
+            setBackgroundChecks(values.getBackgroundChecks(), events);
+            setParallelScan(values.isParallelScan(), events);
         }
 
         for (PropertyChangeEvent event : events) {
@@ -106,7 +138,9 @@ public final class CheckstyleSettings {
             updateProperties();
             return new Values(getCustomSeverity(), getCustomConfigFile(),
                     getCustomPropertyFile(), getCustomClasspath(),
-                    getCustomProperties(), getIgnoredPathsPattern());
+                    getCustomProperties(), getIgnoredPathsPattern(),
+                    isCheckModified(), getCheckDelay(), isAggregateLines(),
+                    getBackgroundChecks(), isParallelScan());
         }
     }
 
@@ -307,6 +341,127 @@ public final class CheckstyleSettings {
         return trimToNull(getPreferences().get(PROP_IGNORED_PATHS_PATTERN, null));
     }
 
+    private void setCheckModified(boolean checkModified, List<PropertyChangeEvent> events) {
+        boolean oldValue;
+        synchronized (this) {
+            oldValue = isCheckModified();
+            getPreferences().putBoolean(PROP_CHECK_MODIFIED, checkModified);
+        }
+
+        if (oldValue != checkModified) {
+            events.add(new PropertyChangeEvent(this, PROP_CHECK_MODIFIED, oldValue, checkModified));
+        }
+    }
+
+    /**
+     * Returns whether the unsaved content of the modified documents should
+     * be checked. Does not affect the loaded {@link Configuration}.
+     *
+     * @return <code>true</code> if the modified documents should be checked
+     */
+    public synchronized boolean isCheckModified() {
+        return getPreferences().getBoolean(PROP_CHECK_MODIFIED, false);
+    }
+
+    private void setCheckDelay(int delay, List<PropertyChangeEvent> events) {
+        int oldValue;
+        synchronized (this) {
+            oldValue = getCheckDelay();
+            getPreferences().putInt(PROP_CHECK_DELAY, delay);
+        }
+
+        if (oldValue != delay) {
+            events.add(new PropertyChangeEvent(this, PROP_CHECK_DELAY, oldValue, delay));
+        }
+    }
+
+    /**
+     * Returns the delay of the check of the modified document. Does not
+     * affect the loaded {@link Configuration}.
+     *
+     * @return the delay in milliseconds
+     */
+    public synchronized int getCheckDelay() {
+        return Math.max(0, getPreferences().getInt(PROP_CHECK_DELAY, DEFAULT_CHECK_DELAY));
+    }
+
+    private void setAggregateLines(boolean aggregateLines, List<PropertyChangeEvent> events) {
+        boolean oldValue;
+        synchronized (this) {
+            oldValue = isAggregateLines();
+            getPreferences().putBoolean(PROP_AGGREGATE_LINES, aggregateLines);
+        }
+
+        if (oldValue != aggregateLines) {
+            events.add(new PropertyChangeEvent(this, PROP_AGGREGATE_LINES, oldValue, aggregateLines));
+        }
+    }
+
+    /**
+     * Returns whether all the problems on the line should be shown
+     * by the single editor annotation. Does not affect the loaded
+     * {@link Configuration}.
+     *
+     * @return <code>true</code> if the problems should be aggregated
+     */
+    public synchronized boolean isAggregateLines() {
+        return getPreferences().getBoolean(PROP_AGGREGATE_LINES, false);
+    }
+
+    private void setBackgroundChecks(String checks, List<PropertyChangeEvent> events) {
+        String oldValue;
+        synchronized (this) {
+            oldValue = getBackgroundChecks();
+            if (checks == null) {
+                getPreferences().remove(PROP_BACKGROUND_CHECKS);
+            } else {
+                getPreferences().put(PROP_BACKGROUND_CHECKS, checks);
+            }
+        }
+
+        if (oldValue != checks && (oldValue == null || !oldValue.equals(checks))) {
+            events.add(new PropertyChangeEvent(this, PROP_BACKGROUND_CHECKS, oldValue, checks));
+        }
+    }
+
+    private synchronized String getBackgroundChecks() {
+        return getPreferences().get(PROP_BACKGROUND_CHECKS, DEFAULT_BACKGROUND_CHECKS);
+    }
+
+    private void setParallelScan(boolean parallelScan, List<PropertyChangeEvent> events) {
+        boolean oldValue;
+        synchronized (this) {
+            oldValue = isParallelScan();
+            getPreferences().putBoolean(PROP_PARALLEL_SCAN, parallelScan);
+        }
+
+        if (oldValue != parallelScan) {
+            events.add(new PropertyChangeEvent(this, PROP_PARALLEL_SCAN, oldValue, parallelScan));
+        }
+    }
+
+    /**
+     * Returns whether the task list should be filled by the parallel
+     * scanner. Does not affect the loaded {@link Configuration}.
+     *
+     * @return <code>true</code> if the scope should be scanned in parallel
+     */
+    public synchronized boolean isParallelScan() {
+        return getPreferences().getBoolean(PROP_PARALLEL_SCAN, false);
+    }
+
+    /**
+     * Returns whether the property affects the loaded {@link Configuration}.
+     * The settings of the editor and of the task list are read where used.
+     *
+     * @param name the name of the property
+     * @return <code>true</code> if the configuration has to be reloaded
+     */
+    public static boolean isConfigurationProperty(String name) {
+        return !PROP_CHECK_MODIFIED.equals(name) && !PROP_CHECK_DELAY.equals(name)
+                && !PROP_AGGREGATE_LINES.equals(name) && !PROP_PARALLEL_SCAN.equals(name);
+    }
+
     private static boolean isEqual(List<File> oldClasspath, List<File> newClasspath) {
         if (oldClasspath == newClasspath) {
             return true;
@@ -374,9 +529,21 @@ public final class CheckstyleSettings {
 
         private final String ignoredPathsPattern;
 
+        private final boolean checkModified;
+
+        private final int checkDelay;
+
+        private final boolean aggregateLines;
+
+        private final String backgroundChecks;
+
+        private final boolean parallelScan;
+
         public Values(Severity customSeverity, String customConfigFile,
                 String customPropetyFile, List<File> customClasspath,
-                Properties customProperties, String ignoredPathsPattern) {
+                Properties customProperties, String ignoredPathsPattern,
+                boolean checkModified, int checkDelay, boolean aggregateLines,
+                String backgroundChecks, boolean parallelScan) {
 
             this.customSeverity = customSeverity;
             this.customConfigFile = customConfigFile;
@@ -392,6 +559,11 @@ public final class CheckstyleSettings {
                 this.customProperties.putAll(customProperties);
             }
             this.ignoredPathsPattern = ignoredPathsPattern;
+            this.checkModified = checkModified;
+            this.checkDelay = checkDelay;
+            this.aggregateLines = aggregateLines;
+            this.backgroundChecks = backgroundChecks;
+            this.parallelScan = parallelScan;
         }
 
         public Severity getCustomSeverity() {
@@ -417,5 +589,55 @@ public final class CheckstyleSettings {
         public String getIgnoredPathsPattern() {
             return ignoredPathsPattern;
         }
+
+        /**
+         * Returns whether the unsaved content of the modified documents should
+         * be checked.
+         *
+         * @return <code>true</code> if the modified documents should be checked
+         */
+        public boolean isCheckModified() {
+            return checkModified;
+        }
+
+        /**
+         * Returns the delay of the check of the modified document.
+         *
+         * @return the delay in milliseconds
+         */
+        public int getCheckDelay() {
+            return checkDelay;
+        }
+
+        /**
+         * Returns whether all the problems on the line should be shown
+         * by the single editor annotation.
+         *
+         * @return <code>true</code> if the problems should be aggregated
+         */
+        public boolean isAggregateLines() {
+            return aggregateLines;
+        }
+
+        /**
+         * Returns the names or ids of the checks run in the background
+         * separated by commas.
+         *
+         * @return the names or ids of the checks run in the background
+         */
+        public String getBackgroundChecks() {
+            return backgroundChecks;
+        }
+
+        /**
+         * Returns whether the task list should be filled by the parallel
+         * scanner walking the scope itself instead of the scanner fed
+         * by the task list one file at a time.
+         *
+         * @return <code>true</code> if the scope should be scanned in parallel
+         */
+        public boolean isParallelScan() {
+            return parallelScan;
+        }
     }
 }
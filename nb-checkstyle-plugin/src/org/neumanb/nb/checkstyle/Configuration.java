@@ -1,9 +1,15 @@
 package org.neumanb.nb.checkstyle;
 
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 /**
- *
+ * The loaded checkstyle configuration and everything else determining
+ * the results of the checks. The settings of the editor and of the task
+ * list are read from the {@link CheckstyleSettings} where used.
  */
 public final class Configuration {
 
@@ -15,13 +21,75 @@ public final class Configuration {
 
     private final Pattern ignoredPathsPattern;
 
+    private final long fingerprint;
+
+    private final int prunedCount;
+
+    private final Configuration root;
+
+    private final Map<CheckTier, Configuration> tiers = new EnumMap<>(CheckTier.class);
+
+    private volatile Boolean crossFile;
+
+    private volatile Configuration perFileChecks;
+
+    private volatile Configuration crossFileChecks;
+
     public Configuration(Severity severity,
             com.puppycrawl.tools.checkstyle.api.Configuration configuration,
-            ClassLoader classLoader, Pattern ignoredPathsPattern) {
+            ClassLoader classLoader, Pattern ignoredPathsPattern, long fingerprint,
+            int prunedCount) {
         this.severity = severity;
         this.configuration = configuration;
         this.classLoader = classLoader;
         this.ignoredPathsPattern = ignoredPathsPattern;
+        this.fingerprint = fingerprint;
+        this.prunedCount = prunedCount;
+        this.root = this;
+    }
+
+    private Configuration(Configuration root,
+            com.puppycrawl.tools.checkstyle.api.Configuration configuration, long fingerprint) {
+        this.severity = root.severity;
+        this.configuration = configuration;
+        this.classLoader = root.classLoader;
+        this.ignoredPathsPattern = root.ignoredPathsPattern;
+        this.fingerprint = fingerprint;
+        this.prunedCount = root.prunedCount;
+        this.root = root;
+    }
+
+    /**
+     * Returns the copy of this configuration without the tiers. Used by
+     * the {@link ConfigurationLoader} to split the same checks again.
+     *
+     * @return the copy of this configuration without the tiers
+     */
+    Configuration copy() {
+        Configuration copy = new Configuration(severity, configuration, classLoader,
+                ignoredPathsPattern, fingerprint, prunedCount);
+        copy.crossFile = crossFile;
+        return copy;
+    }
+
+    /**
+     * Sets the configuration of the tier. The tier shares all the settings
+     * with this configuration, only the checkstyle configuration differs.
+     * Called by the {@link ConfigurationLoader} before the configuration
+     * is published.
+     *
+     * @param tier the tier
+     * @param configuration the checkstyle configuration of the tier,
+     *             <code>null</code> if the tier has no checks
+     * @param fingerprint the fingerprint of the checkstyle configuration
+     */
+    void setTier(CheckTier tier, com.puppycrawl.tools.checkstyle.api.Configuration configuration,
+            long fingerprint) {
+        if (configuration != null) {
+            tiers.put(tier, new Configuration(this, configuration, fingerprint));
+        } else {
+            tiers.remove(tier);
+        }
     }
 
     public com.puppycrawl.tools.checkstyle.api.Configuration getCheckstyleConfiguration() {
@@ -40,4 +108,125 @@ public final class Configuration {
         return ignoredPathsPattern;
     }
 
+    /**
+     * Returns the fingerprint of the effective checkstyle configuration.
+     *
+     * @return the fingerprint of the effective checkstyle configuration
+     * @see ViolationCache#fingerprint(com.puppycrawl.tools.checkstyle.api.Configuration, java.util.List)
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns whether some of the checks depend on more than the content
+     * of the checked file. The results of such checks differ with the other
+     * files checked before or stored in the same directory.
+     *
+     * @return <code>true</code> if some of the checks depend on more than
+     *             the checked content
+     * @see ModuleInspector#isCrossFile(Object)
+     */
+    public boolean hasCrossFileChecks() {
+        Boolean result = crossFile;
+        if (result == null) {
+            // resolved lazily as the modules have to be instantiated
+            result = new ModuleInspector(classLoader).containsCrossFile(configuration);
+            crossFile = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the configuration running only the checks depending on nothing
+     * but the checked file. Their results can be cached.
+     *
+     * @return the configuration of the checks depending only on the checked
+     *             file, this configuration if there are no other checks
+     * @see #getCrossFileChecks()
+     */
+    public Configuration getPerFileChecks() {
+        if (!hasCrossFileChecks()) {
+            return this;
+        }
+        splitCrossFileChecks();
+        return perFileChecks;
+    }
+
+    /**
+     * Returns the configuration running only the checks depending on more
+     * than the checked file. Their results have to be computed again each
+     * time the file is checked.
+     *
+     * @return the configuration of the checks depending on more than
+     *             the checked file, <code>null</code> if there are none
+     * @see #getPerFileChecks()
+     */
+    public Configuration getCrossFileChecks() {
+        if (!hasCrossFileChecks()) {
+            return null;
+        }
+        splitCrossFileChecks();
+        return crossFileChecks;
+    }
+
+    /**
+     * Returns the configuration running only the checks of the given tier.
+     * When the configuration is not split all the checks run inline.
+     *
+     * @param tier the tier
+     * @return the configuration of the tier, <code>null</code> if there are
+     *             no checks in the tier
+     */
+    public Configuration getTier(CheckTier tier) {
+        Configuration result = root.tiers.get(tier);
+        if (result == null && tier == CheckTier.INLINE && root.tiers.isEmpty()) {
+            return root;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the configuration the tier was derived from, the configuration
+     * itself if it is not a tier.
+     *
+     * @return the configuration the tier was derived from
+     */
+    public Configuration getRoot() {
+        return root;
+    }
+
+    private synchronized void splitCrossFileChecks() {
+        if (perFileChecks != null) {
+            return;
+        }
+        ModuleInspector inspector = new ModuleInspector(classLoader);
+        try {
+            DefaultConfiguration perFile = inspector.copyChecks(configuration, false);
+            DefaultConfiguration crossFile = inspector.copyChecks(configuration, true);
+            Configuration crossFileResult = new Configuration(root, crossFile,
+                    ViolationCache.fingerprint(fingerprint, crossFile));
+            crossFileResult.crossFile = Boolean.TRUE;
+            Configuration perFileResult = new Configuration(root, perFile,
+                    ViolationCache.fingerprint(fingerprint, perFile));
+            perFileResult.crossFile = Boolean.FALSE;
+            crossFileChecks = crossFileResult;
+            // published last, it tells the split is done
+            perFileChecks = perFileResult;
+        } catch (CheckstyleException ex) {
+            // the configuration was read already when loaded
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the number of the modules removed from the checkstyle
+     * configuration as they can't pass the severity.
+     *
+     * @return the number of the removed modules
+     */
+    public int getPrunedCount() {
+        return prunedCount;
+    }
+
 }
@@ -24,6 +24,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.filesystems.URLMapper;
@@ -34,7 +36,7 @@ import org.xml.sax.InputSource;
  *
  * @author Petr Hejl
  */
-public final class ConfigurationLoader implements PropertyChangeListener {
+public final class ConfigurationLoader implements PropertyChangeListener, ChangeListener {
 
     private static final Logger LOGGER = Logger.getLogger(ConfigurationLoader.class.getName());
 
@@ -53,6 +55,9 @@ public final class ConfigurationLoader implements PropertyChangeListener {
 
     private Future<?> reloadTask;
 
+    // the settings the current configuration was loaded with
+    private CheckstyleSettings.Values loadedValues;
+
     private ConfigurationLoader() {
         super();
     }
@@ -63,6 +68,9 @@ public final class ConfigurationLoader implements PropertyChangeListener {
             CheckstyleSettings settings = CheckstyleSettings.getDefault();
             settings.addPropertyChangeListener(
                     WeakListeners.propertyChange(instance, settings));
+            // the slow modules are moved to the background tier
+            ModuleTimings timings = ModuleTimings.getDefault();
+            timings.addChangeListener(WeakListeners.change(instance, timings));
 
             // prepare the configuration
             instance.reloadConfiguration();
@@ -82,9 +90,23 @@ public final class ConfigurationLoader implements PropertyChangeListener {
 
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getPropertyName() == null
+                || CheckstyleSettings.isConfigurationProperty(evt.getPropertyName())) {
+            scheduleReload();
+        }
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        // only the tiers change, the loaded checks stay the same
+        scheduleSplit();
+    }
+
+    private void scheduleReload() {
         synchronized (this) {
             configuration = null;
             exception = null;
+            CheckerPool.getDefault().invalidate();
 
             if (reloadTask != null) {
                 reloadTask.cancel(false);
@@ -98,12 +120,47 @@ public final class ConfigurationLoader implements PropertyChangeListener {
         }
     }
 
+    private synchronized void scheduleSplit() {
+        if (reloadTask != null && !reloadTask.isDone()) {
+            // the pending task splits with the current timings
+            return;
+        }
+
+        reloadTask = EXECUTOR.schedule(new Runnable() {
+            public void run() {
+                splitConfiguration();
+            }
+        }, RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Splits the loaded checks into the tiers again. The checkers of the tiers
+     * not affected stay pooled.
+     */
+    synchronized void splitConfiguration() {
+        if (configuration == null) {
+            // being reloaded or failed
+            return;
+        }
+
+        try {
+            configuration = split(configuration.copy(), loadedValues);
+        } catch (CheckstyleException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+        }
+    }
+
     synchronized void reloadConfiguration() {
         configuration = null;
         exception = null;
+        loadedValues = null;
+        CheckerPool.getDefault().invalidate();
 
+        long start = System.nanoTime();
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.CONFIGURATION_RELOAD);
         try {
             CheckstyleSettings.Values values = CheckstyleSettings.getDefault().getValues();
+            span.setFile(values.getCustomConfigFile());
 
             Properties properties = (values.getCustomPropertyFile() != null)
                     ? loadProperties(values.getCustomPropertyFile(), System.getProperties())
@@ -127,13 +184,45 @@ public final class ConfigurationLoader implements PropertyChangeListener {
                 }
             }
 
-            configuration = new Configuration(values.getCustomSeverity(),
-                    loadConfiguration(values.getCustomConfigFile(), fresh),
-                    createClassLoader(values.getCustomClasspath()), ignoredPathsPattern);
+            ClassLoader classLoader = createClassLoader(values.getCustomClasspath());
+
+            // the modules not passing the severity would be filtered anyway
+            ConfigurationPruner pruner = new ConfigurationPruner(values.getCustomSeverity(), classLoader);
+            com.puppycrawl.tools.checkstyle.api.Configuration checkstyleConfiguration =
+                    pruner.prune(loadConfiguration(values.getCustomConfigFile(), fresh));
+            if (pruner.getPrunedCount() > 0) {
+                LOGGER.log(Level.FINE, "Pruned {0} modules below the severity {1}",
+                        new Object[] {pruner.getPrunedCount(), values.getCustomSeverity()});
+            }
+
+            Configuration loaded = new Configuration(values.getCustomSeverity(), checkstyleConfiguration,
+                    classLoader, ignoredPathsPattern,
+                    ViolationCache.fingerprint(checkstyleConfiguration, values.getCustomClasspath()),
+                    pruner.getPrunedCount());
+
+            configuration = split(loaded, values);
+            loadedValues = values;
         } catch (CheckstyleException ex) {
             exception = ex;
             LOGGER.log(Level.INFO, null, ex);
+        } finally {
+            span.commit();
+            CheckstyleMetrics.getDefault().recordReload(System.nanoTime() - start);
+        }
+    }
+
+    private static Configuration split(Configuration loaded, CheckstyleSettings.Values values)
+            throws CheckstyleException {
+
+        ConfigurationSplitter splitter = new ConfigurationSplitter(loaded.getCheckstyleClassLoader(),
+                values.getBackgroundChecks());
+        splitter.split(loaded.getCheckstyleConfiguration());
+        for (CheckTier tier : CheckTier.values()) {
+            com.puppycrawl.tools.checkstyle.api.Configuration tierConfiguration = splitter.getTier(tier);
+            loaded.setTier(tier, tierConfiguration, tierConfiguration == null ? 0
+                    : ViolationCache.fingerprint(tierConfiguration, values.getCustomClasspath()));
         }
+        return loaded;
     }
 
     private com.puppycrawl.tools.checkstyle.api.Configuration loadConfiguration(
@@ -0,0 +1,115 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes the modules which can't report a violation passing the configured
+ * {@link Severity} from the checkstyle configuration. The severity of
+ * the module is inherited from the parent module unless it is set explicitly,
+ * the same way the checker does it. The <code>TreeWalker</code> left without
+ * any check is removed as well.
+ * <p>
+ * Only the modules reporting the violations are removed, the filters and
+ * other helper modules are always kept.
+ */
+final class ConfigurationPruner {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationPruner.class.getName());
+
+    private static final String SEVERITY_PROPERTY = "severity"; // NOI18N
+
+    private static final String TREE_WALKER = "TreeWalker"; // NOI18N
+
+    private final Severity minimalSeverity;
+
+    private final ModuleInspector inspector;
+
+    private int prunedCount;
+
+    public ConfigurationPruner(Severity minimalSeverity, ClassLoader classLoader) {
+        this.minimalSeverity = minimalSeverity;
+        this.inspector = new ModuleInspector(classLoader);
+    }
+
+    /**
+     * Returns the pruned copy of the configuration. The passed configuration
+     * is not modified.
+     *
+     * @param configuration the root configuration
+     * @return the pruned copy of the configuration
+     * @throws CheckstyleException if the configuration can't be read
+     */
+    public Configuration prune(Configuration configuration) throws CheckstyleException {
+        prunedCount = 0;
+        if (minimalSeverity.include(SeverityLevel.IGNORE)) {
+            // everything passes the filter
+            return configuration;
+        }
+        // the default severity of the checker
+        return copy(configuration, getSeverity(configuration, SeverityLevel.ERROR));
+    }
+
+    /**
+     * Returns the number of the modules removed by the last
+     * {@link #prune(Configuration)} call.
+     *
+     * @return the number of the removed modules
+     */
+    public int getPrunedCount() {
+        return prunedCount;
+    }
+
+    private DefaultConfiguration copy(Configuration configuration, SeverityLevel severity)
+            throws CheckstyleException {
+
+        DefaultConfiguration result = ModuleInspector.copyModule(configuration);
+        for (Configuration child : configuration.getChildren()) {
+            SeverityLevel childSeverity = getSeverity(child, severity);
+            if (child.getChildren().length == 0 && !minimalSeverity.include(childSeverity)
+                    && inspector.isReporter(child, false)) {
+                prunedCount++;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Pruned module {0}", child.getName());
+                }
+                continue;
+            }
+
+            DefaultConfiguration copy = copy(child, childSeverity);
+            if (TREE_WALKER.equals(child.getName()) && !hasReporter(copy)) {
+                prunedCount++;
+                LOGGER.log(Level.FINE, "Pruned empty TreeWalker");
+                continue;
+            }
+            result.addChild(copy);
+        }
+        return result;
+    }
+
+    private boolean hasReporter(Configuration configuration) {
+        for (Configuration child : configuration.getChildren()) {
+            if (inspector.isReporter(child, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static SeverityLevel getSeverity(Configuration configuration, SeverityLevel inherited) {
+        String value = ModuleInspector.getProperty(configuration, SEVERITY_PROPERTY);
+        if (value == null) {
+            return inherited;
+        }
+        try {
+            return SeverityLevel.getInstance(value);
+        } catch (IllegalArgumentException ex) {
+            // the checker reports the invalid value
+            LOGGER.log(Level.FINE, null, ex);
+            return inherited;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Splits the checkstyle configuration to the {@link CheckTier}s. The check
+ * goes to the background tier when it is listed by the user or when
+ * the {@link ModuleTimings} know it is slow. All other checks stay inline.
+ * <p>
+ * The filters and other helper modules are copied to both tiers so
+ * the suppressions work the same way. The <code>TreeWalker</code> without
+ * any check is left out of the tier.
+ */
+final class ConfigurationSplitter {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationSplitter.class.getName());
+
+    private static final String TREE_WALKER = "TreeWalker"; // NOI18N
+
+    private static final String CHECK_SUFFIX = "Check"; // NOI18N
+
+    private final ModuleInspector inspector;
+
+    private final Set<String> backgroundChecks = new HashSet<>();
+
+    private final ModuleTimings timings = ModuleTimings.getDefault();
+
+    private DefaultConfiguration inline;
+
+    private DefaultConfiguration background;
+
+    private int backgroundCount;
+
+    /**
+     * Creates the splitter.
+     *
+     * @param classLoader the classloader to load checks
+     * @param backgroundChecks the names or ids of the checks always
+     *             run in the background, separated by commas or whitespace
+     */
+    public ConfigurationSplitter(ClassLoader classLoader, String backgroundChecks) {
+        this.inspector = new ModuleInspector(classLoader);
+        if (backgroundChecks != null) {
+            for (String name : backgroundChecks.split("[,\\s]+")) { // NOI18N
+                if (!name.isEmpty()) {
+                    this.backgroundChecks.add(normalize(name));
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the configuration. The passed configuration is not modified.
+     *
+     * @param configuration the root configuration
+     * @throws CheckstyleException if the configuration can't be read
+     */
+    public void split(Configuration configuration) throws CheckstyleException {
+        backgroundCount = 0;
+        inline = ModuleInspector.copyModule(configuration);
+        background = ModuleInspector.copyModule(configuration);
+        split(configuration, inline, background);
+    }
+
+    /**
+     * Returns the configuration of the tier.
+     *
+     * @param tier the tier
+     * @return the configuration of the tier, <code>null</code> for
+     *             the background tier without any check
+     */
+    public Configuration getTier(CheckTier tier) {
+        if (tier == CheckTier.INLINE) {
+            return inline;
+        }
+        return backgroundCount > 0 ? background : null;
+    }
+
+    private void split(Configuration configuration, DefaultConfiguration inlineParent,
+            DefaultConfiguration backgroundParent) throws CheckstyleException {
+
+        for (Configuration child : configuration.getChildren()) {
+            if (child.getChildren().length > 0) {
+                DefaultConfiguration inlineChild = ModuleInspector.copyModule(child);
+                DefaultConfiguration backgroundChild = ModuleInspector.copyModule(child);
+                split(child, inlineChild, backgroundChild);
+
+                boolean walker = TREE_WALKER.equals(child.getName());
+                if (!walker || hasReporter(inlineChild)) {
+                    inlineParent.addChild(inlineChild);
+                }
+                if (!walker || hasReporter(backgroundChild)) {
+                    backgroundParent.addChild(backgroundChild);
+                }
+                continue;
+            }
+
+            if (!inspector.isReporter(child, false)) {
+                // the filters and the modules which can't be created go to both tiers
+                inlineParent.addChild(ModuleInspector.copyModule(child));
+                backgroundParent.addChild(ModuleInspector.copyModule(child));
+            } else if (isBackground(child)) {
+                backgroundParent.addChild(ModuleInspector.copyModule(child));
+                backgroundCount++;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Module {0} runs in the background", child.getName());
+                }
+            } else {
+                inlineParent.addChild(ModuleInspector.copyModule(child));
+            }
+        }
+    }
+
+    private boolean isBackground(Configuration configuration) {
+        if (backgroundChecks.contains(normalize(configuration.getName()))) {
+            return true;
+        }
+        String id = ModuleInspector.getProperty(configuration, ModuleInspector.ID_PROPERTY);
+        if (id != null && backgroundChecks.contains(id)) {
+            return true;
+        }
+        return timings.isSlow(inspector.getTimingKey(configuration));
+    }
+
+    private boolean hasReporter(Configuration configuration) {
+        for (Configuration child : configuration.getChildren()) {
+            if (inspector.isReporter(child, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String name) {
+        String result = name.substring(name.lastIndexOf('.') + 1);
+        if (result.endsWith(CHECK_SUFFIX) && result.length() > CHECK_SUFFIX.length()) {
+            result = result.substring(0, result.length() - CHECK_SUFFIX.length());
+        }
+        return result;
+    }
+}
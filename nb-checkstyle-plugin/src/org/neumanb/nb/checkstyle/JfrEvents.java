@@ -0,0 +1,176 @@
+package org.neumanb.nb.checkstyle;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The flight recorder events behind the {@link CheckstyleEvents}. This class
+ * links against <code>jdk.jfr</code> so it must be touched only once
+ * the flight recorder is known to be present.
+ */
+final class JfrEvents {
+
+    private static final String PREFIX = "org.neumanb.nb.checkstyle."; // NOI18N
+
+    private JfrEvents() {
+        super();
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    /**
+     * Starts the event of the given type.
+     *
+     * @return the started event or <code>null</code> if the event
+     *             is not enabled in any recording
+     */
+    static CheckstyleEvents.Span begin(CheckstyleEvents.Type type) {
+        CheckstyleEvent event;
+        switch (type) {
+            case CONFIGURATION_RELOAD:
+                event = new ConfigurationReloadEvent();
+                break;
+            case CHECKER_ACQUIRE:
+                event = new CheckerAcquireEvent();
+                break;
+            case CHECKER_RELEASE:
+                event = new CheckerReleaseEvent();
+                break;
+            case CHECKER_CONFIGURE:
+                event = new CheckerConfigureEvent();
+                break;
+            case PROCESS:
+                event = new ProcessEvent();
+                break;
+            case POSITION_RESOLVE:
+                event = new PositionResolveEvent();
+                break;
+            case ANNOTATION_ATTACH:
+                event = new AnnotationAttachEvent();
+                break;
+            case ANNOTATION_DETACH:
+                event = new AnnotationDetachEvent();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " + type);
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Category({"NetBeans", "Checkstyle"}) // NOI18N
+    @StackTrace(false)
+    abstract static class CheckstyleEvent extends Event implements CheckstyleEvents.Span {
+
+        @Label("File")
+        String file;
+
+        @Label("File Size")
+        @DataAmount
+        long fileSize;
+
+        @Label("Violations")
+        int violations;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+        @Label("Cancelled")
+        boolean cancelled;
+
+        @Override
+        public CheckstyleEvents.Span setFile(String file) {
+            this.file = file;
+            return this;
+        }
+
+        @Override
+        public CheckstyleEvents.Span setFileSize(long size) {
+            this.fileSize = size;
+            return this;
+        }
+
+        @Override
+        public CheckstyleEvents.Span setViolations(int count) {
+            this.violations = count;
+            return this;
+        }
+
+        @Override
+        public CheckstyleEvents.Span setCacheHit(boolean hit) {
+            this.cacheHit = hit;
+            return this;
+        }
+
+        @Override
+        public CheckstyleEvents.Span setCancelled(boolean cancelled) {
+            this.cancelled = cancelled;
+            return this;
+        }
+    }
+
+    @Name(PREFIX + "ConfigurationReload")
+    @Label("Configuration Reload")
+    @Description("Reload of the checkstyle configuration")
+    static final class ConfigurationReloadEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "CheckerAcquire")
+    @Label("Checker Acquire")
+    @Description("Lease of the configured checker from the cache")
+    @Enabled(false)
+    static final class CheckerAcquireEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "CheckerRelease")
+    @Label("Checker Release")
+    @Description("Return of the checker to the cache")
+    @Enabled(false)
+    static final class CheckerReleaseEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "CheckerConfigure")
+    @Label("Checker Configure")
+    @Description("Configuration of the fresh checker instantiating all the modules")
+    static final class CheckerConfigureEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "Process")
+    @Label("Process")
+    @Description("Check of the single file")
+    static final class ProcessEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "PositionResolve")
+    @Label("Position Resolve")
+    @Description("Resolution of the violation lines to the document positions")
+    @Enabled(false)
+    static final class PositionResolveEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "AnnotationAttach")
+    @Label("Annotation Attach")
+    @Description("Attach of the annotations to the document")
+    @Enabled(false)
+    static final class AnnotationAttachEvent extends CheckstyleEvent {
+    }
+
+    @Name(PREFIX + "AnnotationDetach")
+    @Label("Annotation Detach")
+    @Description("Detach of the annotations from the document")
+    @Enabled(false)
+    static final class AnnotationDetachEvent extends CheckstyleEvent {
+    }
+}
@@ -0,0 +1,213 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.DefaultConfiguration;
+import com.puppycrawl.tools.checkstyle.PackageNamesLoader;
+import com.puppycrawl.tools.checkstyle.PackageObjectFactory;
+import com.puppycrawl.tools.checkstyle.api.AbstractCheck;
+import com.puppycrawl.tools.checkstyle.api.AbstractViolationReporter;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Configuration;
+import com.puppycrawl.tools.checkstyle.checks.SuppressWarningsHolder;
+import com.puppycrawl.tools.checkstyle.checks.TranslationCheck;
+import com.puppycrawl.tools.checkstyle.checks.UniquePropertiesCheck;
+import com.puppycrawl.tools.checkstyle.checks.javadoc.JavadocPackageCheck;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the modules of the configuration to find out what they are
+ * without configuring them. The modules are instantiated with the same
+ * factory the checker uses.
+ */
+final class ModuleInspector {
+
+    private static final Logger LOGGER = Logger.getLogger(ModuleInspector.class.getName());
+
+    static final String ID_PROPERTY = "id"; // NOI18N
+
+    private final ClassLoader classLoader;
+
+    private PackageObjectFactory factory;
+
+    public ModuleInspector(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns whether the module reports the violations. The filters and
+     * other helper modules do not.
+     *
+     * @param configuration the configuration of the module
+     * @param unknown the value returned when the module can't be created
+     * @return <code>true</code> if the module reports the violations
+     */
+    public boolean isReporter(Configuration configuration, boolean unknown) {
+        Object module = createModule(configuration);
+        if (module == null) {
+            return unknown;
+        }
+        // the holder does not report anything but the filter needs it
+        return module instanceof AbstractViolationReporter
+                && !(module instanceof SuppressWarningsHolder);
+    }
+
+    /**
+     * Returns whether any of the modules requires the comment nodes
+     * in the tree it walks.
+     *
+     * @param configurations the configurations of the modules
+     * @return <code>true</code> if any of the modules requires the comments
+     */
+    public boolean isCommentNodesRequired(Configuration... configurations) {
+        for (Configuration configuration : configurations) {
+            Object module = createModule(configuration);
+            if (module instanceof AbstractCheck && ((AbstractCheck) module).isCommentNodesRequired()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the result of the module depends on more than
+     * the content of the checked file. Such modules either remember
+     * the files checked so far, look at the other files of the directory
+     * or read the checked file from the disk.
+     *
+     * @param module the module
+     * @return <code>true</code> if the module depends on more than
+     *             the checked content
+     */
+    public static boolean isCrossFile(Object module) {
+        return module instanceof JavadocPackageCheck
+                || module instanceof TranslationCheck
+                || module instanceof UniquePropertiesCheck;
+    }
+
+    /**
+     * Returns whether the configuration contains any module depending
+     * on more than the content of the checked file.
+     *
+     * @param configuration the configuration of the module
+     * @return <code>true</code> if the module or any of its children
+     *             depends on more than the checked content
+     * @see #isCrossFile(Object)
+     */
+    public boolean containsCrossFile(Configuration configuration) {
+        // the modules which can't be created are reported by the checker
+        if (isCrossFile(createModule(configuration))) {
+            return true;
+        }
+        for (Configuration child : configuration.getChildren()) {
+            if (containsCrossFile(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the copy of the configuration keeping either just the modules
+     * depending on more than the checked file or just the other ones.
+     * The filters and other helper modules are copied to both, the module
+     * with the children only when it keeps some module of the kind.
+     *
+     * @param configuration the root configuration
+     * @param crossFile <code>true</code> to keep the modules depending on
+     *             more than the checked file, <code>false</code> to keep
+     *             the other ones
+     * @return the copy of the configuration
+     * @throws CheckstyleException if the configuration can't be read
+     * @see #isCrossFile(Object)
+     */
+    public DefaultConfiguration copyChecks(Configuration configuration, boolean crossFile)
+            throws CheckstyleException {
+
+        DefaultConfiguration result = copyModule(configuration);
+        for (Configuration child : configuration.getChildren()) {
+            if (child.getChildren().length > 0) {
+                if (!crossFile || containsCrossFile(child)) {
+                    result.addChild(copyChecks(child, crossFile));
+                }
+            } else if (!isReporter(child, false) || isCrossFile(createModule(child)) == crossFile) {
+                result.addChild(copyModule(child));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key the timings of the module are recorded with.
+     *
+     * @param configuration the configuration of the module
+     * @return the key of the module
+     * @see ModuleTimings#getKey(Object)
+     */
+    public String getTimingKey(Configuration configuration) {
+        String id = getProperty(configuration, ID_PROPERTY);
+        if (id != null) {
+            return id;
+        }
+        Object module = createModule(configuration);
+        return module != null ? module.getClass().getName() : configuration.getName();
+    }
+
+    /**
+     * Returns the value of the property set explicitly in the configuration.
+     *
+     * @param configuration the configuration of the module
+     * @param name the name of the property
+     * @return the value or <code>null</code> if the property is not set
+     */
+    public static String getProperty(Configuration configuration, String name) {
+        for (String property : configuration.getPropertyNames()) {
+            if (name.equals(property)) {
+                try {
+                    return configuration.getProperty(property);
+                } catch (CheckstyleException ex) {
+                    LOGGER.log(Level.FINE, null, ex);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the copy of the module configuration without the children.
+     *
+     * @param configuration the configuration of the module
+     * @return the copy without the children
+     * @throws CheckstyleException if the configuration can't be read
+     */
+    public static DefaultConfiguration copyModule(Configuration configuration)
+            throws CheckstyleException {
+
+        DefaultConfiguration result = configuration instanceof DefaultConfiguration
+                ? new DefaultConfiguration(configuration.getName(),
+                        ((DefaultConfiguration) configuration).getThreadModeSettings())
+                : new DefaultConfiguration(configuration.getName());
+        for (String name : configuration.getPropertyNames()) {
+            result.addProperty(name, configuration.getProperty(name));
+        }
+        for (Map.Entry<String, String> entry : configuration.getMessages().entrySet()) {
+            result.addMessage(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private Object createModule(Configuration configuration) {
+        try {
+            if (factory == null) {
+                factory = new PackageObjectFactory(
+                        PackageNamesLoader.getPackageNames(classLoader), classLoader);
+            }
+            return factory.createModule(configuration.getName());
+        } catch (CheckstyleException | LinkageError ex) {
+            // the checker reports it later
+            LOGGER.log(Level.FINE, null, ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.AbstractViolationReporter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.event.ChangeListener;
+import org.openide.util.ChangeSupport;
+
+/**
+ * Keeps the average time the checkstyle modules spend on a single file.
+ * The module taking more than {@link #SLOW_THRESHOLD_MILLIS} on average is
+ * considered slow and moved to the {@link CheckTier#BACKGROUND} tier.
+ * The slow module is moved back once its average falls below
+ * {@link #FAST_THRESHOLD_MILLIS}, the gap keeps the module from flipping
+ * between the tiers. The listeners are notified whenever a module becomes
+ * slow or fast again.
+ * <p>
+ * The first samples of each module are ignored as they include the class
+ * loading and the interpreted code.
+ */
+public final class ModuleTimings {
+
+    /**
+     * The average time per file in milliseconds making the module slow.
+     */
+    public static final long SLOW_THRESHOLD_MILLIS = 5;
+
+    /**
+     * The average time per file in milliseconds making the slow module
+     * fast again.
+     */
+    public static final long FAST_THRESHOLD_MILLIS = 3;
+
+    private static final Logger LOGGER = Logger.getLogger(ModuleTimings.class.getName());
+
+    private static final long SLOW_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(SLOW_THRESHOLD_MILLIS);
+
+    private static final long FAST_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(FAST_THRESHOLD_MILLIS);
+
+    private static final int IGNORED_SAMPLES = 3;
+
+    private static final int MIN_SAMPLES = 5;
+
+    private static final double WEIGHT = 0.2;
+
+    private static ModuleTimings instance;
+
+    private final ChangeSupport changeSupport = new ChangeSupport(this);
+
+    /* GuardedBy("this") */
+    private final Map<String, Timing> timings = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private final Set<String> slow = new HashSet<>();
+
+    private ModuleTimings() {
+        super();
+    }
+
+    public static synchronized ModuleTimings getDefault() {
+        if (instance == null) {
+            instance = new ModuleTimings();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the key the timings of the module are stored with. It is
+     * the id of the module if it has one, the class name otherwise.
+     *
+     * @param module the checkstyle module
+     * @return the key of the module
+     */
+    public static String getKey(Object module) {
+        if (module instanceof AbstractViolationReporter) {
+            String id = ((AbstractViolationReporter) module).getId();
+            if (id != null) {
+                return id;
+            }
+        }
+        return module.getClass().getName();
+    }
+
+    /**
+     * Records the time the module spent on a single file.
+     *
+     * @param key the key of the module
+     * @param nanos the time in nanoseconds
+     */
+    public void record(String key, long nanos) {
+        Boolean changed = null;
+        synchronized (this) {
+            Timing timing = timings.get(key);
+            if (timing == null) {
+                timing = new Timing();
+                timings.put(key, timing);
+            }
+            timing.count++;
+            if (timing.count <= IGNORED_SAMPLES) {
+                return;
+            }
+            if (timing.count == IGNORED_SAMPLES + 1) {
+                timing.mean = nanos;
+            } else {
+                timing.mean += WEIGHT * (nanos - timing.mean);
+            }
+
+            if (timing.count < IGNORED_SAMPLES + MIN_SAMPLES) {
+                return;
+            }
+            if (timing.mean >= SLOW_THRESHOLD_NANOS && slow.add(key)) {
+                changed = Boolean.TRUE;
+            } else if (timing.mean < FAST_THRESHOLD_NANOS && slow.remove(key)) {
+                changed = Boolean.FALSE;
+            }
+        }
+
+        if (changed != null) {
+            LOGGER.log(Level.INFO, changed ? "Checkstyle module {0} is slow"
+                    : "Checkstyle module {0} is fast again", key);
+            changeSupport.fireChange();
+        }
+    }
+
+    /**
+     * Returns whether the module is known to be slow.
+     *
+     * @param key the key of the module
+     * @return <code>true</code> if the module is slow
+     */
+    public synchronized boolean isSlow(String key) {
+        return slow.contains(key);
+    }
+
+    /**
+     * Returns the average time the module spends on a single file.
+     *
+     * @param key the key of the module
+     * @return the average time in nanoseconds, <code>-1</code> if not known
+     */
+    public synchronized long getMeanNanos(String key) {
+        Timing timing = timings.get(key);
+        if (timing == null || timing.count <= IGNORED_SAMPLES) {
+            return -1;
+        }
+        return (long) timing.mean;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeSupport.addChangeListener(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeSupport.removeChangeListener(listener);
+    }
+
+    private static final class Timing {
+
+        private long count;
+
+        private double mean;
+    }
+}
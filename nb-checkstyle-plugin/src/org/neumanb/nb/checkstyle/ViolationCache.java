@@ -0,0 +1,673 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.modules.Places;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Persistent cache of the raw violations stored in the IDE cache directory.
+ * The entry is addressed by the hash of the file content and path combined
+ * with the fingerprint of the effective configuration, so unchanged files
+ * are not checked again across the IDE sessions.
+ * <p>
+ * Each entry is a small binary file written to a temporary file first and
+ * atomically moved in place. Broken entries are treated as a cache miss and
+ * deleted. The number of entries and their total size is bounded; the least
+ * recently used entries are evicted.
+ * <p>
+ * Only the results of the checks depending on nothing but the checked file
+ * are cached, see {@link Configuration#getPerFileChecks()}. The keys are not
+ * created for the configurations with the other checks.
+ */
+public final class ViolationCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ViolationCache.class.getName());
+
+    private static final RequestProcessor WRITER = new RequestProcessor(ViolationCache.class.getName(), 1);
+
+    private static final String CACHE_DIRECTORY = "checkstyle/violations"; // NOI18N
+
+    private static final String ENTRY_EXTENSION = ".cv"; // NOI18N
+
+    private static final String TEMP_EXTENSION = ".tmp"; // NOI18N
+
+    private static final int MAGIC = 0x4e42_4353;
+
+    private static final int VERSION = 1;
+
+    // magic, version and both hashes
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+    private static final int MAX_ENTRIES = 20000;
+
+    private static final long MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final SeverityLevel[] LEVELS = SeverityLevel.values();
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private static ViolationCache instance;
+
+    private final File directory;
+
+    /* GuardedBy("this") */
+    private final Map<String, Class<?>> sourceClasses = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private int entries = -1;
+
+    /* GuardedBy("this") */
+    private long size;
+
+    /* GuardedBy("this") */
+    private long hits;
+
+    /* GuardedBy("this") */
+    private long misses;
+
+    private ViolationCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized ViolationCache getDefault() {
+        if (instance == null) {
+            instance = new ViolationCache(Places.getCacheSubdirectory(CACHE_DIRECTORY));
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the fingerprint of the effective configuration. It covers
+     * the modules with their properties and messages, the files referenced
+     * by the properties such as suppressions or headers, the custom classpath
+     * jars and the Checkstyle version.
+     *
+     * @param configuration the checkstyle configuration
+     * @param classpath the custom classpath
+     * @return the fingerprint of the configuration
+     */
+    public static long fingerprint(com.puppycrawl.tools.checkstyle.api.Configuration configuration,
+            List<File> classpath) {
+
+        long hash = hash(FNV_OFFSET, Checker.class.getPackage().getImplementationVersion());
+        hash = hash(hash, configuration);
+        for (File file : classpath) {
+            hash = hash(hash, file);
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the fingerprint of the part of the configuration.
+     *
+     * @param fingerprint the fingerprint of the whole configuration
+     * @param part the checkstyle configuration of the part
+     * @return the fingerprint of the part
+     */
+    static long fingerprint(long fingerprint, com.puppycrawl.tools.checkstyle.api.Configuration part) {
+        return hash(fingerprint, part);
+    }
+
+    /**
+     * Creates the key for the file checked with the given configuration.
+     *
+     * @param file the file to check
+     * @param configuration the configuration used for the check
+     * @return the key or <code>null</code> if the file can't be read or
+     *             the result can't be cached as some checks depend on
+     *             more than the file
+     */
+    public Key createKey(File file, Configuration configuration) {
+        if (configuration.hasCrossFileChecks()) {
+            return null;
+        }
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            return new Key(hash(FNV_OFFSET, content),
+                    hash(configuration.getFingerprint(), file.getAbsolutePath()), content.length);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the key for the file content checked with the given
+     * configuration. Used for the content which is not stored on the disk.
+     *
+     * @param file the file to check
+     * @param text the content of the file
+     * @param configuration the configuration used for the check
+     * @return the key or <code>null</code> if the result can't be cached
+     *             as some checks depend on more than the file
+     */
+    public Key createKey(File file, FileText text, Configuration configuration) {
+        if (configuration.hasCrossFileChecks()) {
+            return null;
+        }
+        long hash = FNV_OFFSET;
+        CharSequence content = text.getFullText();
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            hash = ((hash ^ (c & 0xff)) * FNV_PRIME ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return new Key(hash, hash(hash(configuration.getFingerprint(), file.getAbsolutePath()), "text"), // NOI18N
+                content.length());
+    }
+
+    /**
+     * Returns the cached violations for the key.
+     *
+     * @param key the key of the entry
+     * @param configuration the configuration used to resolve the check classes
+     * @return the cached violations or <code>null</code> if there are none
+     */
+    public List<Violation> get(Key key, Configuration configuration) {
+        File entry = new File(directory, key.getName() + ENTRY_EXTENSION);
+        if (!entry.isFile()) {
+            miss();
+            return null;
+        }
+
+        try {
+            List<Violation> violations = read(entry, key, configuration);
+            if (!entry.setLastModified(System.currentTimeMillis())) {
+                LOGGER.log(Level.FINE, "Could not touch {0}", entry);
+            }
+            synchronized (this) {
+                hits++;
+            }
+            return violations;
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Discarding broken entry " + entry, ex);
+            delete(entry);
+            miss();
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether there is an entry for the key. Only the header of the
+     * entry is read, neither the statistics nor the access time are updated.
+     *
+     * @param key the key of the entry
+     * @return <code>true</code> if there is a readable entry for the key
+     */
+    public boolean contains(Key key) {
+        File entry = new File(directory, key.getName() + ENTRY_EXTENSION);
+        if (!entry.isFile()) {
+            return false;
+        }
+
+        try {
+            DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(entry),
+                    HEADER_SIZE));
+            try {
+                return isHeader(is, key);
+            } finally {
+                is.close();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, null, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the violations collected by the recorder. The entry is written
+     * asynchronously.
+     *
+     * @param key the key of the entry
+     * @param recorder the recorder collecting the violations
+     */
+    public void put(final Key key, Recorder recorder) {
+        if (recorder.isFailed()) {
+            return;
+        }
+        final List<Violation> violations = recorder.getViolations();
+        WRITER.post(new Runnable() {
+
+            @Override
+            public void run() {
+                write(key, violations);
+            }
+        });
+    }
+
+    /**
+     * Replays the violations to the listener as if they were reported by
+     * the checker.
+     *
+     * @param violations the cached violations
+     * @param fileName the name of the checked file
+     * @param listener the listener to notify
+     */
+    public void replay(List<Violation> violations, String fileName, AuditListener listener) {
+        for (Violation violation : violations) {
+            listener.addError(new AuditEvent(this, fileName, violation));
+        }
+    }
+
+    /**
+     * Deletes all the entries. The entries are deleted asynchronously after
+     * the pending writes.
+     */
+    public void clear() {
+        WRITER.post(new Runnable() {
+
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.getName().endsWith(ENTRY_EXTENSION)) {
+                            delete(file);
+                        }
+                    }
+                }
+                synchronized (ViolationCache.this) {
+                    // rescanned on the next write
+                    entries = -1;
+                    size = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the pending writes and deletions are finished.
+     */
+    void waitForWrites() {
+        WRITER.post(new Runnable() {
+
+            @Override
+            public void run() {
+                // just the barrier
+            }
+        }).waitFinished();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    private synchronized void miss() {
+        misses++;
+    }
+
+    private static boolean isHeader(DataInputStream is, Key key) throws IOException {
+        return is.readInt() == MAGIC && is.readUnsignedByte() == VERSION
+                && is.readLong() == key.contentHash && is.readLong() == key.contextHash;
+    }
+
+    private List<Violation> read(File entry, Key key, Configuration configuration) throws IOException {
+        DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+        try {
+            if (!isHeader(is, key)) {
+                throw new IOException("Unexpected header");
+            }
+
+            String[] strings = new String[is.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = is.readUTF();
+            }
+
+            int count = is.readInt();
+            List<Violation> violations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int line = is.readInt();
+                int column = is.readInt();
+                SeverityLevel level = LEVELS[is.readUnsignedByte()];
+                String messageKey = strings[is.readInt()];
+                String moduleId = strings[is.readInt()];
+                String sourceName = strings[is.readInt()];
+                String message = strings[is.readInt()];
+
+                violations.add(new Violation(line, column, null, messageKey, NO_ARGUMENTS, level,
+                        moduleId.isEmpty() ? null : moduleId,
+                        findSourceClass(sourceName, configuration), escape(message)));
+            }
+            return violations;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException(ex);
+        } finally {
+            is.close();
+        }
+    }
+
+    private void write(Key key, List<Violation> violations) {
+        File entry = new File(directory, key.getName() + ENTRY_EXTENSION);
+        File temp = new File(directory, key.getName() + TEMP_EXTENSION);
+        try {
+            Map<String, Integer> indexes = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            int[] records = new int[violations.size() * 4];
+            for (int i = 0; i < violations.size(); i++) {
+                Violation violation = violations.get(i);
+                records[i * 4] = index(violation.getKey(), indexes, strings);
+                records[i * 4 + 1] = index(violation.getModuleId(), indexes, strings);
+                records[i * 4 + 2] = index(violation.getSourceName(), indexes, strings);
+                records[i * 4 + 3] = index(violation.getViolation(), indexes, strings);
+            }
+
+            DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                os.writeInt(MAGIC);
+                os.writeByte(VERSION);
+                os.writeLong(key.contentHash);
+                os.writeLong(key.contextHash);
+                os.writeInt(strings.size());
+                for (String string : strings) {
+                    os.writeUTF(string);
+                }
+                os.writeInt(violations.size());
+                for (int i = 0; i < violations.size(); i++) {
+                    Violation violation = violations.get(i);
+                    os.writeInt(violation.getLineNo());
+                    os.writeInt(violation.getColumnNo());
+                    os.writeByte(violation.getSeverityLevel().ordinal());
+                    for (int j = 0; j < 4; j++) {
+                        os.writeInt(records[i * 4 + j]);
+                    }
+                }
+            } finally {
+                os.close();
+            }
+
+            long oldSize = entry.length();
+            boolean existed = entry.isFile();
+            try {
+                Files.move(temp.toPath(), entry.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            boolean evict;
+            synchronized (this) {
+                if (entries < 0) {
+                    scan();
+                } else {
+                    entries += existed ? 0 : 1;
+                    size += entry.length() - oldSize;
+                }
+                evict = entries > MAX_ENTRIES || size > MAX_SIZE;
+            }
+            if (evict) {
+                evict();
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+            delete(temp);
+        }
+    }
+
+    private synchronized void scan() {
+        entries = 0;
+        size = 0;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_EXTENSION)) {
+                // leftover of the interrupted write
+                delete(file);
+            } else if (file.getName().endsWith(ENTRY_EXTENSION)) {
+                entries++;
+                size += file.length();
+            }
+        }
+    }
+
+    private void evict() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final Map<File, Long> modified = new HashMap<>();
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_EXTENSION)) {
+                modified.put(file, file.lastModified());
+            }
+        }
+        List<File> sorted = new ArrayList<>(modified.keySet());
+        Collections.sort(sorted, new Comparator<File>() {
+
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(modified.get(o1), modified.get(o2));
+            }
+        });
+
+        // evict a quarter at once so the eviction does not run on every write
+        int count = sorted.size();
+        long total = 0;
+        for (File file : sorted) {
+            total += file.length();
+        }
+        int removed = 0;
+        for (File file : sorted) {
+            if (count <= MAX_ENTRIES * 3 / 4 && total <= MAX_SIZE * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (delete(file)) {
+                count--;
+                total -= length;
+                removed++;
+            }
+        }
+
+        synchronized (this) {
+            entries = count;
+            size = total;
+        }
+        LOGGER.log(Level.FINE, "Evicted {0} cache entries", removed);
+    }
+
+    private synchronized Class<?> findSourceClass(String name, Configuration configuration) {
+        Class<?> clazz = sourceClasses.get(name);
+        if (clazz == null) {
+            try {
+                clazz = Class.forName(name, false, configuration.getCheckstyleClassLoader());
+            } catch (ClassNotFoundException ex) {
+                LOGGER.log(Level.FINE, null, ex);
+                clazz = ViolationCache.class;
+            }
+            sourceClasses.put(name, clazz);
+        }
+        return clazz;
+    }
+
+    private static int index(String value, Map<String, Integer> indexes, List<String> strings) {
+        String nonNull = value != null ? value : ""; // NOI18N
+        Integer index = indexes.get(nonNull);
+        if (index == null) {
+            index = strings.size();
+            strings.add(nonNull);
+            indexes.put(nonNull, index);
+        }
+        return index;
+    }
+
+    private static String escape(String message) {
+        // the message is used as a MessageFormat pattern by the Violation
+        return message.replace("'", "''").replace("{", "'{'"); // NOI18N
+    }
+
+    private static boolean delete(File file) {
+        boolean deleted = file.delete();
+        if (!deleted) {
+            LOGGER.log(Level.FINE, "Could not delete {0}", file);
+        }
+        return deleted;
+    }
+
+    private static long hash(long hash, com.puppycrawl.tools.checkstyle.api.Configuration configuration) {
+        long result = hash(hash, configuration.getName());
+        try {
+            for (String name : configuration.getPropertyNames()) {
+                String value = configuration.getProperty(name);
+                result = hash(hash(result, name), value);
+                File file = new File(value);
+                if (file.isFile()) {
+                    result = hash(result, file);
+                }
+            }
+        } catch (CheckstyleException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (Map.Entry<String, String> message : configuration.getMessages().entrySet()) {
+            result = hash(hash(result, message.getKey()), message.getValue());
+        }
+        for (com.puppycrawl.tools.checkstyle.api.Configuration child : configuration.getChildren()) {
+            result = hash(result, child);
+        }
+        return result;
+    }
+
+    private static long hash(long hash, File file) {
+        long result = hash(hash, file.getAbsolutePath());
+        result = hash(result, Long.toString(file.length()));
+        return hash(result, Long.toString(file.lastModified()));
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return (hash ^ 0xff) * FNV_PRIME;
+        }
+        return hash(hash, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long hash(long hash, byte[] value) {
+        long result = hash;
+        for (byte b : value) {
+            result ^= b & 0xff;
+            result *= FNV_PRIME;
+        }
+        // separator so concatenated values do not collide
+        return (result ^ 0xff) * FNV_PRIME;
+    }
+
+    /**
+     * The key of the cache entry.
+     */
+    public static final class Key {
+
+        private final long contentHash;
+
+        private final long contextHash;
+
+        private final int length;
+
+        private Key(long contentHash, long contextHash, int length) {
+            this.contentHash = contentHash;
+            this.contextHash = contextHash;
+            this.length = length;
+        }
+
+        String getName() {
+            return String.format("%016x%016x%08x", contentHash, contextHash, length); // NOI18N
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return contentHash == other.contentHash && contextHash == other.contextHash
+                    && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new long[] {contentHash, contextHash, length});
+        }
+    }
+
+    /**
+     * The listener recording the raw violations reported by the checker.
+     */
+    public static final class Recorder implements AuditListener {
+
+        /* GuardedBy("this") */
+        private final List<Violation> violations = new ArrayList<>();
+
+        /* GuardedBy("this") */
+        private boolean failed;
+
+        public synchronized List<Violation> getViolations() {
+            return new ArrayList<>(violations);
+        }
+
+        public synchronized boolean isFailed() {
+            return failed;
+        }
+
+        @Override
+        public synchronized void addError(AuditEvent evt) {
+            if (evt.getViolation() != null) {
+                violations.add(evt.getViolation());
+            }
+        }
+
+        @Override
+        public synchronized void addException(AuditEvent evt, Throwable throwable) {
+            failed = true;
+        }
+
+        @Override
+        public void auditStarted(AuditEvent evt) {
+        }
+
+        @Override
+        public void auditFinished(AuditEvent evt) {
+        }
+
+        @Override
+        public void fileStarted(AuditEvent evt) {
+        }
+
+        @Override
+        public void fileFinished(AuditEvent evt) {
+        }
+    }
+}
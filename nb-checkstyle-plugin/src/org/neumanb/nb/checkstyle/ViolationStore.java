@@ -0,0 +1,176 @@
+package org.neumanb.nb.checkstyle;
+
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compact store of the violations of the single file. The violations are kept
+ * in the primitive columns, the messages and the sources are kept in the table
+ * of the strings and referenced by the index. The strings are shared with
+ * all other stores so the same message reported in many files is kept just
+ * once.
+ * <p>
+ * This class is <i>thread safe</i>.
+ */
+public final class ViolationStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final SeverityLevel[] LEVELS = SeverityLevel.values();
+
+    /* GuardedBy("STRINGS") */
+    private static final Map<String, Reference<String>> STRINGS = new WeakHashMap<>();
+
+    /* GuardedBy("this") */
+    private final List<String> strings = new ArrayList<>();
+
+    /* GuardedBy("this") */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private int[] lines = new int[INITIAL_CAPACITY];
+
+    /* GuardedBy("this") */
+    private int[] columns = new int[INITIAL_CAPACITY];
+
+    /* GuardedBy("this") */
+    private byte[] severities = new byte[INITIAL_CAPACITY];
+
+    /* GuardedBy("this") */
+    private int[] sources = new int[INITIAL_CAPACITY];
+
+    /* GuardedBy("this") */
+    private int[] messages = new int[INITIAL_CAPACITY];
+
+    /* GuardedBy("this") */
+    private int size;
+
+    public synchronized void add(int line, int column, SeverityLevel severity, String source,
+            String message) {
+
+        if (size == lines.length) {
+            int capacity = size * 2;
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            severities = Arrays.copyOf(severities, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+
+        lines[size] = line;
+        columns[size] = column;
+        severities[size] = (byte) severity.ordinal();
+        sources[size] = getId(source);
+        messages[size] = getId(message);
+        size++;
+    }
+
+    /**
+     * Adds all the violations of the other store.
+     *
+     * @param violations the violations to add
+     */
+    public void addAll(ViolationStore violations) {
+        for (int i = 0; i < violations.size(); i++) {
+            add(violations.getLine(i), violations.getColumn(i), violations.getSeverityLevel(i),
+                    violations.getSource(i), violations.getMessage(i));
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getLine(int index) {
+        checkIndex(index);
+        return lines[index];
+    }
+
+    public synchronized int getColumn(int index) {
+        checkIndex(index);
+        return columns[index];
+    }
+
+    public synchronized SeverityLevel getSeverityLevel(int index) {
+        checkIndex(index);
+        return LEVELS[severities[index]];
+    }
+
+    /**
+     * Returns the id or the name of the check reporting the violation.
+     *
+     * @param index the index of the violation
+     * @return the id or the name of the check reporting the violation
+     */
+    public synchronized String getSource(int index) {
+        checkIndex(index);
+        return strings.get(sources[index]);
+    }
+
+    public synchronized String getMessage(int index) {
+        checkIndex(index);
+        return strings.get(messages[index]);
+    }
+
+    /**
+     * Returns the indexes of the violations ordered by the line. The violations
+     * on the same line keep the reported order.
+     *
+     * @return the indexes of the violations ordered by the line
+     */
+    public synchronized int[] getIndexesByLine() {
+        // the sort of the longs combining the line and the index is stable
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) lines[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /* GuardedBy("this") */
+    private int getId(String value) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = strings.size();
+            // the key must not pin the value the shared one replaces
+            String shared = intern(value);
+            strings.add(shared);
+            ids.put(shared, id);
+        }
+        return id;
+    }
+
+    private static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        synchronized (STRINGS) {
+            Reference<String> ref = STRINGS.get(value);
+            String shared = ref != null ? ref.get() : null;
+            if (shared == null) {
+                shared = value;
+                STRINGS.put(shared, new WeakReference<>(shared));
+            }
+            return shared;
+        }
+    }
+}
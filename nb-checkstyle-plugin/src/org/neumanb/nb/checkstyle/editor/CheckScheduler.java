@@ -0,0 +1,272 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObject;
+import org.openide.util.RequestProcessor;
+import org.openide.util.WeakListeners;
+import org.openide.windows.TopComponent;
+
+/**
+ * Scheduler of the editor checks. For each file at most one check is running
+ * and at most one check is waiting. The newly scheduled check supersedes
+ * the waiting one as only the latest result matters. The waiting check of
+ * the file in the focused editor runs before the checks of the files opened
+ * in the background.
+ */
+public final class CheckScheduler implements PropertyChangeListener {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckScheduler.class.getName());
+
+    private static final int MAX_WORKERS = 10;
+
+    private static final RequestProcessor WORKERS = new RequestProcessor(CheckScheduler.class.getName(),
+            MAX_WORKERS);
+
+    private static CheckScheduler instance;
+
+    private final Runnable worker = new Runnable() {
+
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /* GuardedBy("this") */
+    private final Map<FileObject, Slot> slots = new HashMap<>();
+
+    /* GuardedBy("this") */
+    private final LinkedHashMap<FileObject, Request> ready = new LinkedHashMap<>();
+
+    /* GuardedBy("this") */
+    private int workers;
+
+    /* GuardedBy("this") */
+    private long superseded;
+
+    /* GuardedBy("this") */
+    private long completed;
+
+    private volatile FileObject focused;
+
+    private CheckScheduler() {
+        super();
+    }
+
+    public static synchronized CheckScheduler getDefault() {
+        if (instance == null) {
+            instance = new CheckScheduler();
+            TopComponent.Registry registry = TopComponent.getRegistry();
+            registry.addPropertyChangeListener(WeakListeners.propertyChange(instance, registry));
+        }
+        return instance;
+    }
+
+    /**
+     * Schedules the check of the file. The check waiting for the same file
+     * is superseded.
+     *
+     * @param fileObject the checked file
+     * @param check the check to run
+     * @param delay the delay in milliseconds before the check becomes ready
+     */
+    public void schedule(FileObject fileObject, Runnable check, int delay) {
+        final Request request = new Request(fileObject, check);
+        synchronized (this) {
+            Slot slot = slots.get(fileObject);
+            if (slot == null) {
+                slot = new Slot();
+                slots.put(fileObject, slot);
+            }
+            if (slot.pending != null) {
+                ready.remove(fileObject);
+                superseded++;
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Superseded check of {0}", fileObject.getNameExt());
+                }
+            }
+            slot.pending = request;
+        }
+
+        if (delay > 0) {
+            WORKERS.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    ready(request);
+                }
+            }, delay);
+        } else {
+            ready(request);
+        }
+    }
+
+    /**
+     * Removes the given check if it is still waiting.
+     *
+     * @param fileObject the checked file
+     * @param check the check to remove
+     */
+    public synchronized void cancel(FileObject fileObject, Runnable check) {
+        Slot slot = slots.get(fileObject);
+        if (slot == null || slot.pending == null || slot.pending.check != check) {
+            return;
+        }
+        ready.remove(fileObject);
+        slot.pending = null;
+        if (slot.running == null) {
+            slots.remove(fileObject);
+        }
+    }
+
+    /**
+     * Returns the number of the checks waiting to run.
+     *
+     * @return the number of the checks waiting to run
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Slot slot : slots.values()) {
+            if (slot.pending != null) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    public synchronized long getSupersededCount() {
+        return superseded;
+    }
+
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    @Override
+    public void propertyChange(PropertyChangeEvent evt) {
+        if (!TopComponent.Registry.PROP_ACTIVATED.equals(evt.getPropertyName())) {
+            return;
+        }
+
+        TopComponent activated = TopComponent.getRegistry().getActivated();
+        if (activated == null) {
+            return;
+        }
+        // activating the non editor window keeps the last focused file
+        DataObject data = activated.getLookup().lookup(DataObject.class);
+        if (data != null) {
+            focused = data.getPrimaryFile();
+        }
+    }
+
+    private void ready(Request request) {
+        synchronized (this) {
+            Slot slot = slots.get(request.fileObject);
+            if (slot == null || slot.pending != request) {
+                // superseded or cancelled meanwhile
+                return;
+            }
+            ready.put(request.fileObject, request);
+            if (workers >= MAX_WORKERS) {
+                return;
+            }
+            workers++;
+        }
+        WORKERS.post(worker);
+    }
+
+    private void drain() {
+        boolean idle = false;
+        try {
+            while (true) {
+                Request request;
+                synchronized (this) {
+                    request = next();
+                    if (request == null) {
+                        workers--;
+                        idle = true;
+                        return;
+                    }
+                    ready.remove(request.fileObject);
+                    Slot slot = slots.get(request.fileObject);
+                    slot.pending = null;
+                    slot.running = request;
+                }
+
+                try {
+                    request.check.run();
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, null, ex);
+                } finally {
+                    synchronized (this) {
+                        Slot slot = slots.get(request.fileObject);
+                        slot.running = null;
+                        if (slot.pending == null) {
+                            slots.remove(request.fileObject);
+                        }
+                        completed++;
+                    }
+                }
+            }
+        } finally {
+            if (!idle) {
+                // an error thrown by the check must not leak the worker
+                boolean repost;
+                synchronized (this) {
+                    repost = !ready.isEmpty();
+                    if (!repost) {
+                        workers--;
+                    }
+                }
+                if (repost) {
+                    WORKERS.post(worker);
+                }
+            }
+        }
+    }
+
+    /* GuardedBy("this") */
+    private Request next() {
+        FileObject current = focused;
+        Request candidate = null;
+        for (Request request : ready.values()) {
+            // the file is being checked, wait for it to finish
+            if (slots.get(request.fileObject).running != null) {
+                continue;
+            }
+            if (request.fileObject.equals(current)) {
+                return request;
+            }
+            if (candidate == null) {
+                candidate = request;
+            }
+        }
+        return candidate;
+    }
+
+    private static final class Slot {
+
+        private Request running;
+
+        private Request pending;
+    }
+
+    private static final class Request {
+
+        private final FileObject fileObject;
+
+        private final Runnable check;
+
+        public Request(FileObject fileObject, Runnable check) {
+            this.fileObject = fileObject;
+            this.check = check;
+        }
+    }
+}
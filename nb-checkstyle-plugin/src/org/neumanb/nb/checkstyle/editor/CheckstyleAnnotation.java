@@ -15,15 +15,21 @@ public abstract class CheckstyleAnnotation extends Annotation {
 
     private final Position position;
 
+    private final int line;
+
+    private final String source;
+
     private final String shortDescription;
 
     private final SeverityLevel level;
 
-    public CheckstyleAnnotation(StyledDocument document, Position position,
-            String shortDescription, SeverityLevel level) {
+    public CheckstyleAnnotation(StyledDocument document, Position position, int line,
+            String source, String shortDescription, SeverityLevel level) {
 
         this.document = document;
         this.position = position;
+        this.line = line;
+        this.source = source;
         this.shortDescription = shortDescription;
         this.level = level;
     }
@@ -36,6 +42,44 @@ public abstract class CheckstyleAnnotation extends Annotation {
         NbDocument.removeAnnotation(document, this);
     }
 
+    public StyledDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the line reported by the check. The line is not updated
+     * on document changes.
+     *
+     * @return the line reported by the check
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the line the annotation is at now. Unlike {@link #getLine()}
+     * the line follows the changes of the document. The caller should hold
+     * the read lock of the document.
+     *
+     * @return the current line of the annotation
+     */
+    public int getCurrentLine() {
+        return NbDocument.findLineNumber(document, position.getOffset());
+    }
+
+    /**
+     * Returns the id or the name of the check reporting the problem.
+     *
+     * @return the id or the name of the check reporting the problem
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public SeverityLevel getSeverityLevel() {
+        return level;
+    }
+
     @Override
     public String getShortDescription() {
         return shortDescription;
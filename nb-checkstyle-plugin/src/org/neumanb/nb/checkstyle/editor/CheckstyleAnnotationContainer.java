@@ -1,23 +1,62 @@
 package org.neumanb.nb.checkstyle.editor;
 
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import org.neumanb.nb.checkstyle.CheckTier;
+import org.neumanb.nb.checkstyle.CheckstyleEvents;
+import org.neumanb.nb.checkstyle.ViolationStore;
 import java.beans.PropertyChangeEvent;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.beans.PropertyChangeListener;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.JEditorPane;
+import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.StyledDocument;
 import org.openide.cookies.EditorCookie;
 import org.openide.filesystems.FileObject;
 import org.openide.loaders.DataObject;
 import org.openide.loaders.DataObjectNotFoundException;
+import org.openide.text.NbDocument;
+import org.openide.util.ChangeSupport;
 import org.openide.util.RequestProcessor;
 
 /**
  * The class holding the annotations for the single file object.
+ * <p>
+ * The problems are kept in the compact store, see {@link DocumentProblems}.
+ * The annotations are created just for the problems attached to the document;
+ * when there are too many problems only those near the visible part of
+ * the editor get them and the rest is reported by the summary on the first
+ * line.
+ * <p>
+ * The containers are registered in striped weak maps so the lookups for
+ * different files rarely contend and the containers of the files gone
+ * do not pin the memory. The updates of different files run in parallel,
+ * the updates of the single file are ordered and coalesced.
  *
  * @author Petr Hejl
  */
@@ -26,17 +65,74 @@ public final class CheckstyleAnnotationContainer {
     private static final Logger LOGGER = Logger.getLogger(CheckstyleAnnotationContainer.class.getName());
 
     private static final RequestProcessor UPDATER = new RequestProcessor(
-            CheckstyleAnnotationContainer.class.getName(), 1, false, false);
+            CheckstyleAnnotationContainer.class.getName(), 4, false, false);
 
-    private static final Map<FileObject, CheckstyleAnnotationContainer> CONTAINERS =
-            new HashMap<FileObject, CheckstyleAnnotationContainer>();
+    private static final int STRIPES = 16;
 
-    private final FileObject fileObject;
+    /* GuardedBy("stripe") */
+    private static final List<Map<FileObject, CheckstyleAnnotationContainer>> CONTAINERS =
+            new ArrayList<>(STRIPES);
 
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            CONTAINERS.add(new WeakHashMap<FileObject, CheckstyleAnnotationContainer>());
+        }
+    }
+
+    private static final AtomicLong ATTACHED = new AtomicLong();
+
+    private static final AtomicLong DETACHED = new AtomicLong();
+
+    private static final AtomicLong KEPT = new AtomicLong();
+
+    private static final int MAX_LIVE_ANNOTATIONS = 500;
+
+    private static final int VISIBLE_MARGIN = 100;
+
+    private static final int SCROLL_DELAY = 100;
+
+    private static final DocumentProblems NO_PROBLEMS =
+            new DocumentProblems(null, new ViolationStore(), false);
+
+    // the registry holds the file weakly, the container must not pin it
+    private final Reference<FileObject> fileObject;
+
+    private final RequestProcessor.Task updateTask = UPDATER.create(new AnnotationUpdater());
+
+    /* GuardedBy("this") */
     private final List<CheckstyleAnnotation> annotations = new ArrayList<>();
 
+    /* GuardedBy("this") */
+    private final Map<CheckTier, ViolationStore> tiers = new EnumMap<>(CheckTier.class);
+
+    /* GuardedBy("this") */
+    private DocumentProblems problems = NO_PROBLEMS;
+
+    /* GuardedBy("this") */
+    private DocumentProblems pending;
+
+    // confined to the update task
+    private final Set<CheckstyleAnnotation> attached = Collections.newSetFromMap(
+            new IdentityHashMap<CheckstyleAnnotation, Boolean>());
+
+    // the annotations of the current problems by their entry, confined to the update task
+    private final Map<Integer, CheckstyleAnnotation> live = new TreeMap<>();
+
+    // confined to the update task
+    private SummaryAnnotation summary;
+
+    private final ViewportTracker viewportTracker = new ViewportTracker();
+
+    private final ChangeSupport changeSupport = new ChangeSupport(this);
+
+    private volatile boolean tracking;
+
+    private volatile int firstVisibleLine = -1;
+
+    private volatile int lastVisibleLine = -1;
+
     private CheckstyleAnnotationContainer(FileObject fileObject) {
-        this.fileObject = fileObject;
+        this.fileObject = new WeakReference<>(fileObject);
     }
 
     /**
@@ -47,11 +143,13 @@ public final class CheckstyleAnnotationContainer {
      * @return the annotation container for the given file object (existing
      *           or newly created one).
      */
-    public static synchronized CheckstyleAnnotationContainer getInstance(FileObject fileObject) {
-        CheckstyleAnnotationContainer annotationContainer = CONTAINERS.get(fileObject);
-
-        if (annotationContainer != null) {
-            return annotationContainer;
+    public static CheckstyleAnnotationContainer getInstance(FileObject fileObject) {
+        Map<FileObject, CheckstyleAnnotationContainer> stripe = getStripe(fileObject);
+        synchronized (stripe) {
+            CheckstyleAnnotationContainer annotationContainer = stripe.get(fileObject);
+            if (annotationContainer != null) {
+                return annotationContainer;
+            }
         }
 
         try {
@@ -62,14 +160,20 @@ public final class CheckstyleAnnotationContainer {
                 return null;
             }
 
-            annotationContainer = new CheckstyleAnnotationContainer(fileObject);
+            CheckstyleAnnotationContainer annotationContainer = new CheckstyleAnnotationContainer(fileObject);
+            synchronized (stripe) {
+                // created by another thread meanwhile
+                CheckstyleAnnotationContainer existing = stripe.get(fileObject);
+                if (existing != null) {
+                    return existing;
+                }
+                stripe.put(fileObject, annotationContainer);
+            }
 
-            CloseHandler handler = new CloseHandler(annotationContainer, editorCookie);
+            CloseHandler handler = new CloseHandler(fileObject, annotationContainer, editorCookie);
             editorCookie.addPropertyChangeListener(handler);
             SwingUtilities.invokeLater(handler);
 
-            CONTAINERS.put(fileObject, annotationContainer);
-
             return annotationContainer;
         } catch (DataObjectNotFoundException ex) {
             LOGGER.log(Level.WARNING, null, ex);
@@ -80,83 +184,575 @@ public final class CheckstyleAnnotationContainer {
     /**
      * Resets the factory clearing all holder and all annotations stored.
      */
-    public static synchronized void reset() {
-        for (CheckstyleAnnotationContainer annotationContainer : CONTAINERS.values()) {
-            annotationContainer.setAnnotations(Collections.<CheckstyleAnnotation>emptyList());
+    public static void reset() {
+        List<CheckstyleAnnotationContainer> toClear = new ArrayList<>();
+        for (Map<FileObject, CheckstyleAnnotationContainer> stripe : CONTAINERS) {
+            synchronized (stripe) {
+                toClear.addAll(stripe.values());
+                stripe.clear();
+            }
         }
 
-        CONTAINERS.clear();
+        for (CheckstyleAnnotationContainer annotationContainer : toClear) {
+            annotationContainer.clear();
+        }
     }
 
     /**
      * Returns the file object to which annotations belong to.
      *
-     * @return the file object to which annotations belong to
+     * @return the file object to which annotations belong to or
+     *             <code>null</code> if it does not exist anymore
      */
     public FileObject getFileObject() {
-        return fileObject;
+        return fileObject.get();
+    }
+
+    /**
+     * Removes the problems of all the tiers.
+     *
+     * @see #setViolations(CheckTier, StyledDocument, ViolationStore, boolean)
+     */
+    public void clear() {
+        synchronized (this) {
+            tiers.clear();
+            // the update not yet started is superseded
+            pending = NO_PROBLEMS;
+        }
+        updateTask.schedule(0);
     }
 
     /**
-     * Sets the new bunch of annotations to the file object. The old annotations
-     * are removed and detached. This method is <i>thread safe</i>.
+     * Sets the new bunch of problems of the tier to the file object. The
+     * problems of the other tiers are kept. The annotations of the old
+     * problems are removed and detached. The annotations of the problems
+     * reported again on the same line are kept attached. When there are too
+     * many problems only those near the visible part of the editor are
+     * attached and the rest is reported by the summary on the first line.
+     * This method is <i>thread safe</i>.
      *
-     * @param newAnnotations the fresh annotations to attach
+     * @param tier the tier the problems come from
+     * @param document the document the problems belong to
+     * @param violations the problems found by the checks of the tier
+     * @param aggregate <code>true</code> if the problems on the same line
+     *             should be shown by the single annotation
      */
-    public synchronized void setAnnotations(List<CheckstyleAnnotation> newAnnotations) {
-        UPDATER.post(new AnnotationUpdater(newAnnotations, annotations));
+    public void setViolations(CheckTier tier, StyledDocument document, ViolationStore violations,
+            boolean aggregate) {
+
+        synchronized (this) {
+            tiers.put(tier, violations);
+            ViolationStore merged = new ViolationStore();
+            for (ViolationStore tierViolations : tiers.values()) {
+                merged.addAll(tierViolations);
+            }
+            // the update not yet started is superseded
+            pending = new DocumentProblems(document, merged, aggregate);
+        }
+        updateTask.schedule(0);
     }
 
     /**
-     * Returns the list of annotations currently used.
+     * Returns the list of annotations currently attached. The problems far
+     * from the visible part of the editor have no annotation.
      *
-     * @return unmodifiable list of current used annotations
+     * @return unmodifiable list of the attached annotations
      */
     public synchronized List<CheckstyleAnnotation> getAnnotations() {
-        return Collections.unmodifiableList(annotations);
+        return Collections.unmodifiableList(new ArrayList<>(annotations));
     }
 
-    private class AnnotationUpdater implements Runnable {
+    /**
+     * Returns the number of annotations attached to the documents.
+     *
+     * @return the number of annotations attached to the documents
+     */
+    public static long getAttachedCount() {
+        return ATTACHED.get();
+    }
 
-        private final List<CheckstyleAnnotation> annotationsToAdd;
+    /**
+     * Returns the number of annotations detached from the documents.
+     *
+     * @return the number of annotations detached from the documents
+     */
+    public static long getDetachedCount() {
+        return DETACHED.get();
+    }
 
-        private final List<CheckstyleAnnotation> annotationsToRemove;
+    /**
+     * Returns the number of annotations kept attached as they did not
+     * change. Each of them saved the detach and the attach.
+     *
+     * @return the number of annotations kept attached
+     */
+    public static long getKeptCount() {
+        return KEPT.get();
+    }
 
-        public AnnotationUpdater(List<CheckstyleAnnotation> annotationsToAdd,
-                List<CheckstyleAnnotation> annotationsToRemove) {
+    /**
+     * Returns the number of the live containers.
+     *
+     * @return the number of the live containers
+     */
+    public static int getContainerCount() {
+        int count = 0;
+        for (Map<FileObject, CheckstyleAnnotationContainer> stripe : CONTAINERS) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
 
-            this.annotationsToAdd = new ArrayList<>(annotationsToAdd);
-            this.annotationsToRemove = new ArrayList<>(annotationsToRemove);
+    /**
+     * Returns the number of the problems held by the live containers,
+     * including those without the annotation.
+     *
+     * @return the number of the problems
+     */
+    public static int getAnnotationCount() {
+        List<CheckstyleAnnotationContainer> containers = new ArrayList<>();
+        for (Map<FileObject, CheckstyleAnnotationContainer> stripe : CONTAINERS) {
+            synchronized (stripe) {
+                containers.addAll(stripe.values());
+            }
+        }
+        int count = 0;
+        for (CheckstyleAnnotationContainer container : containers) {
+            synchronized (container) {
+                count += container.problems.getProblemCount();
+            }
         }
+        return count;
+    }
+
+    /**
+     * Adds the listener notified each time the update of the annotations
+     * finishes, even if no annotation changed. The listener is called
+     * from the update task.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(ChangeListener listener) {
+        changeSupport.addChangeListener(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeSupport.removeChangeListener(listener);
+    }
+
+    private static Map<FileObject, CheckstyleAnnotationContainer> getStripe(FileObject fileObject) {
+        return CONTAINERS.get((fileObject.hashCode() & Integer.MAX_VALUE) % STRIPES);
+    }
+
+    /**
+     * Starts to follow the scrolling of the editors showing the file. Newly
+     * opened editors are followed as well once this is called again.
+     */
+    void trackViewport() {
+        if (tracking) {
+            SwingUtilities.invokeLater(viewportTracker);
+        }
+    }
+
+    /**
+     * Stops to follow the scrolling of the editors, called once the file
+     * is closed.
+     */
+    void untrackViewport() {
+        tracking = false;
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                viewportTracker.clear();
+            }
+        });
+    }
+
+    /**
+     * Updates the annotations of the container. The task of the container
+     * never runs concurrently with itself so the updates of the single file
+     * are ordered.
+     */
+    private class AnnotationUpdater implements Runnable {
 
         @Override
         public void run() {
-            for (CheckstyleAnnotation annotation : annotationsToRemove) {
-                annotation.documentDetach();
+            DocumentProblems fresh;
+            DocumentProblems current;
+            synchronized (CheckstyleAnnotationContainer.this) {
+                fresh = pending;
+                pending = null;
+                if (fresh != null) {
+                    problems = fresh;
+                }
+                current = problems;
             }
 
-            List<CheckstyleAnnotation> addedAnnotations =
-                    new ArrayList<>(annotationsToAdd.size());
-            for (CheckstyleAnnotation annotation : annotationsToAdd) {
-                annotation.documentAttach();
-                addedAnnotations.add(annotation);
+            Collection<CheckstyleAnnotation> reusable = Collections.emptyList();
+            if (fresh != null) {
+                // the entries of the previous problems do not apply any more
+                reusable = new ArrayList<>(live.values());
+                live.clear();
+            }
+
+            if (current.size() > MAX_LIVE_ANNOTATIONS && !tracking) {
+                tracking = true;
+                SwingUtilities.invokeLater(viewportTracker);
             }
 
+            Map<Integer, CheckstyleAnnotation> selected = createLive(current, selectLive(current), reusable);
+            live.clear();
+            live.putAll(selected);
             synchronized (CheckstyleAnnotationContainer.this) {
                 annotations.clear();
-                annotations.addAll(addedAnnotations);
+                annotations.addAll(live.values());
+            }
+
+            Set<CheckstyleAnnotation> liveSet = Collections.newSetFromMap(
+                    new IdentityHashMap<CheckstyleAnnotation, Boolean>());
+            liveSet.addAll(live.values());
+
+            List<CheckstyleAnnotation> detach = new ArrayList<>();
+            for (CheckstyleAnnotation annotation : attached) {
+                if (!liveSet.contains(annotation)) {
+                    detach.add(annotation);
+                }
+            }
+            List<CheckstyleAnnotation> attach = new ArrayList<>();
+            for (CheckstyleAnnotation annotation : live.values()) {
+                if (!attached.contains(annotation)) {
+                    attach.add(annotation);
+                }
+            }
+
+            int kept = live.size() - attach.size();
+            KEPT.addAndGet(kept);
+            updateSummary(current, current.size() - live.size());
+            if (attach.isEmpty() && detach.isEmpty()) {
+                changeSupport.fireChange();
+                return;
+            }
+
+            FileObject file = getFileObject();
+            String path = file != null ? file.getPath() : null;
+
+            CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.ANNOTATION_DETACH)
+                    .setFile(path)
+                    .setViolations(detach.size());
+            for (CheckstyleAnnotation annotation : detach) {
+                annotation.documentDetach();
+                attached.remove(annotation);
+            }
+            span.commit();
+
+            span = CheckstyleEvents.begin(CheckstyleEvents.Type.ANNOTATION_ATTACH)
+                    .setFile(path)
+                    .setViolations(attach.size());
+            for (CheckstyleAnnotation annotation : attach) {
+                annotation.documentAttach();
+                attached.add(annotation);
+            }
+            span.commit();
+
+            ATTACHED.addAndGet(attach.size());
+            DETACHED.addAndGet(detach.size());
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Annotations of {0}: {1} attached, {2} detached, {3} kept",
+                        new Object[] {file, attach.size(), detach.size(), kept});
+            }
+            changeSupport.fireChange();
+        }
+
+        /**
+         * Returns the annotations of the selected entries. The live entries
+         * keep their annotations. The same problems reported again on the line
+         * the reusable annotation has moved to take it over. Only the rest gets
+         * the new annotations. The lines are resolved in a single pass under
+         * the document lock.
+         */
+        private Map<Integer, CheckstyleAnnotation> createLive(final DocumentProblems current,
+                final int[] selected, final Collection<CheckstyleAnnotation> reusable) {
+
+            final Map<Integer, CheckstyleAnnotation> result = new TreeMap<>();
+            final List<Integer> missing = new ArrayList<>();
+            render(current, new Runnable() {
+
+                @Override
+                public void run() {
+                    Map<Identity, Deque<CheckstyleAnnotation>> old = new HashMap<>();
+                    for (CheckstyleAnnotation annotation : reusable) {
+                        Identity identity = new Identity(annotation);
+                        Deque<CheckstyleAnnotation> same = old.get(identity);
+                        if (same == null) {
+                            same = new ArrayDeque<>(1);
+                            old.put(identity, same);
+                        }
+                        same.add(annotation);
+                    }
+
+                    for (int entry : selected) {
+                        CheckstyleAnnotation annotation = live.get(entry);
+                        if (annotation == null && !old.isEmpty()) {
+                            Deque<CheckstyleAnnotation> same = old.get(new Identity(current, entry));
+                            annotation = same != null ? same.poll() : null;
+                        }
+                        if (annotation != null) {
+                            result.put(entry, annotation);
+                        } else {
+                            missing.add(entry);
+                        }
+                    }
+                }
+            });
+
+            int[] entries = new int[missing.size()];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = missing.get(i);
+            }
+            // the entries are ordered by the reported line
+            Arrays.sort(entries);
+            List<CheckstyleAnnotation> created = current.createAnnotations(entries);
+            for (int i = 0; i < entries.length; i++) {
+                if (created.get(i) != null) {
+                    result.put(entries[i], created.get(i));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Runs the task under the read lock of the document the problems
+         * belong to.
+         */
+        private void render(DocumentProblems current, Runnable task) {
+            if (current.getDocument() == null) {
+                task.run();
+            } else {
+                current.getDocument().render(task);
+            }
+        }
+
+        /**
+         * Selects the entries to attach. When there are too many of them
+         * only those near the visible lines are selected, the nearest first.
+         * The live entries are at the current lines of their annotations
+         * resolved under the document lock, the rest at the reported lines.
+         */
+        private int[] selectLive(DocumentProblems current) {
+            if (current.size() <= MAX_LIVE_ANNOTATIONS) {
+                int[] all = new int[current.size()];
+                for (int i = 0; i < all.length; i++) {
+                    all[i] = i;
+                }
+                return all;
+            }
+
+            // the top of the file until the viewport is known
+            final int firstVisible = Math.max(firstVisibleLine, 0);
+            final int lastVisible = Math.max(lastVisibleLine, firstVisible);
+            int first = firstVisible - VISIBLE_MARGIN;
+            int last = lastVisible + VISIBLE_MARGIN;
+
+            final int[] lines = new int[current.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = current.getLine(i);
+            }
+            render(current, new Runnable() {
+
+                @Override
+                public void run() {
+                    for (Map.Entry<Integer, CheckstyleAnnotation> entry : live.entrySet()) {
+                        lines[entry.getKey()] = entry.getValue().getCurrentLine();
+                    }
+                }
+            });
+
+            List<Integer> near = new ArrayList<>();
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i] >= first && lines[i] <= last) {
+                    near.add(i);
+                }
+            }
+            Collections.sort(near, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int result = Integer.compare(getDistance(lines[o1]), getDistance(lines[o2]));
+                    return result != 0 ? result : Integer.compare(lines[o1], lines[o2]);
+                }
+
+                private int getDistance(int line) {
+                    if (line < firstVisible) {
+                        return firstVisible - line;
+                    }
+                    return line > lastVisible ? line - lastVisible : 0;
+                }
+            });
+
+            int[] selected = new int[Math.min(near.size(), MAX_LIVE_ANNOTATIONS)];
+            for (int i = 0; i < selected.length; i++) {
+                selected[i] = near.get(i);
+            }
+            return selected;
+        }
+
+        private void updateSummary(DocumentProblems current, int hidden) {
+            if (summary != null && summary.getCount() == hidden) {
+                return;
+            }
+            if (summary != null) {
+                summary.documentDetach();
+                summary = null;
+            }
+            if (hidden > 0) {
+                summary = SummaryAnnotation.create(current.getDocument(), hidden);
+                if (summary != null) {
+                    summary.documentAttach();
+                }
             }
         }
     }
 
+    /**
+     * Follows the viewports of the editors showing the file and schedules
+     * the update once the visible lines change.
+     */
+    private class ViewportTracker implements Runnable, ChangeListener {
+
+        // confined to the event dispatch thread
+        private final Set<JViewport> viewports = Collections.newSetFromMap(
+                new WeakHashMap<JViewport, Boolean>());
+
+        @Override
+        public void run() {
+            FileObject file = getFileObject();
+            // the file may have been closed meanwhile
+            if (file == null || !tracking) {
+                return;
+            }
+            try {
+                EditorCookie editorCookie = DataObject.find(file).getLookup().lookup(EditorCookie.class);
+                JEditorPane[] panes = editorCookie != null ? editorCookie.getOpenedPanes() : null;
+                if (panes == null) {
+                    return;
+                }
+                for (JEditorPane pane : panes) {
+                    JViewport viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, pane);
+                    if (viewport != null && viewports.add(viewport)) {
+                        viewport.addChangeListener(this);
+                    }
+                }
+                stateChanged(null);
+            } catch (DataObjectNotFoundException ex) {
+                LOGGER.log(Level.FINE, null, ex);
+            }
+        }
+
+        /**
+         * Stops to listen on the viewports followed so far.
+         */
+        public void clear() {
+            for (JViewport viewport : viewports) {
+                viewport.removeChangeListener(this);
+            }
+            viewports.clear();
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            for (JViewport viewport : viewports) {
+                if (!(viewport.getView() instanceof JTextComponent)) {
+                    continue;
+                }
+                JTextComponent component = (JTextComponent) viewport.getView();
+                if (!(component.getDocument() instanceof StyledDocument)) {
+                    continue;
+                }
+                StyledDocument document = (StyledDocument) component.getDocument();
+                Rectangle rect = viewport.getViewRect();
+                int start = component.viewToModel(rect.getLocation());
+                int end = component.viewToModel(new Point(rect.x, rect.y + rect.height));
+                if (start < 0 || end < 0) {
+                    continue;
+                }
+                first = Math.min(first, NbDocument.findLineNumber(document, start));
+                last = Math.max(last, NbDocument.findLineNumber(document, end));
+            }
+            if (last < 0 || (first == firstVisibleLine && last == lastVisibleLine)) {
+                return;
+            }
+
+            firstVisibleLine = first;
+            lastVisibleLine = last;
+            updateTask.schedule(SCROLL_DELAY);
+        }
+    }
+
+    private static final class Identity {
+
+        private final int line;
+
+        private final String source;
+
+        private final String message;
+
+        private final SeverityLevel level;
+
+        public Identity(CheckstyleAnnotation annotation) {
+            // the reported line is stale once the document changes
+            this.line = annotation.getCurrentLine();
+            this.source = annotation.getSource();
+            this.message = annotation.getShortDescription();
+            this.level = annotation.getSeverityLevel();
+        }
+
+        public Identity(DocumentProblems problems, int entry) {
+            this.line = problems.getLine(entry);
+            this.source = problems.getSource(entry);
+            this.message = problems.getMessage(entry);
+            this.level = problems.getSeverityLevel(entry);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Identity)) {
+                return false;
+            }
+            Identity other = (Identity) obj;
+            return line == other.line
+                    && Objects.equals(source, other.source)
+                    && Objects.equals(message, other.message)
+                    && level == other.level;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 53 * hash + line;
+            hash = 53 * hash + Objects.hashCode(source);
+            hash = 53 * hash + Objects.hashCode(message);
+            hash = 53 * hash + Objects.hashCode(level);
+            return hash;
+        }
+    }
+
     private static class CloseHandler implements PropertyChangeListener, Runnable {
 
+        private final FileObject fileObject;
+
         private final CheckstyleAnnotationContainer container;
 
         private final EditorCookie.Observable editorCookie;
 
-        public CloseHandler(CheckstyleAnnotationContainer container, EditorCookie.Observable editorCookie) {
+        public CloseHandler(FileObject fileObject, CheckstyleAnnotationContainer container,
+                EditorCookie.Observable editorCookie) {
 
+            this.fileObject = fileObject;
             this.container = container;
             this.editorCookie = editorCookie;
         }
@@ -172,12 +768,19 @@ public final class CheckstyleAnnotationContainer {
         @Override
         public void run() {
             if (editorCookie.getOpenedPanes() == null) {
-                synchronized (CheckstyleAnnotationContainer.class) {
-                    CONTAINERS.remove(container.getFileObject());
+                Map<FileObject, CheckstyleAnnotationContainer> stripe = getStripe(fileObject);
+                synchronized (stripe) {
+                    if (stripe.get(fileObject) == container) {
+                        stripe.remove(fileObject);
+                    }
                 }
 
-                container.setAnnotations(Collections.<CheckstyleAnnotation>emptyList());
+                container.clear();
+                container.untrackViewport();
                 editorCookie.removePropertyChangeListener(this);
+            } else {
+                // the editor may have been cloned
+                container.trackViewport();
             }
         }
     }
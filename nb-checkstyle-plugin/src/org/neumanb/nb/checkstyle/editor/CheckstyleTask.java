@@ -1,26 +1,27 @@
 package org.neumanb.nb.checkstyle.editor;
 
-import com.puppycrawl.tools.checkstyle.api.AuditEvent;
 import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import com.puppycrawl.tools.checkstyle.api.Violation;
 import org.neumanb.nb.checkstyle.CancellableChecker;
+import org.neumanb.nb.checkstyle.CheckTier;
+import org.neumanb.nb.checkstyle.CheckerPool;
+import org.neumanb.nb.checkstyle.CheckerWarmup;
+import org.neumanb.nb.checkstyle.CheckstyleEvents;
 import org.neumanb.nb.checkstyle.CheckstyleListener;
+import org.neumanb.nb.checkstyle.CheckstyleMetrics;
+import org.neumanb.nb.checkstyle.CheckstyleSettings;
 import org.neumanb.nb.checkstyle.Configuration;
 import org.neumanb.nb.checkstyle.ConfigurationLoader;
-import org.neumanb.nb.checkstyle.Severity;
+import org.neumanb.nb.checkstyle.ViolationCache;
+import org.neumanb.nb.checkstyle.ViolationStore;
 import org.neumanb.nb.checkstyle.error.ErrorHandler;
 import java.io.File;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Position;
 import javax.swing.text.StyledDocument;
 import org.netbeans.api.java.source.CancellableTask;
 import org.netbeans.api.java.source.CompilationInfo;
@@ -28,23 +29,35 @@ import org.openide.cookies.EditorCookie;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.loaders.DataObject;
-import org.openide.text.NbDocument;
 import org.openide.util.RequestProcessor;
 
 /**
- *
+ * Editor task checking the file. The check itself runs asynchronously and
+ * the results are published to the {@link CheckstyleAnnotationContainer}
+ * when the check completes. Each run is stamped with a version so the results
+ * of a cancelled or superseded run are discarded.
+ * <p>
+ * The checks of the {@link CheckTier#BACKGROUND} tier run with the low
+ * priority once the inline checks are finished.
  */
-public class CheckstyleTask implements CancellableTask<CompilationInfo>, CancellableChecker.CancellationHook {
+public class CheckstyleTask implements CancellableTask<CompilationInfo> {
 
     private static final Logger LOGGER = Logger.getLogger(CheckstyleTask.class.getName());
 
-    private static final RequestProcessor THREAD_POOL = new RequestProcessor(CheckstyleTask.class.getName(), 10, true);
+    private static final RequestProcessor BACKGROUND = new RequestProcessor(
+            CheckstyleTask.class.getName() + ".background", 1); // NOI18N
+
+    private static final int BACKGROUND_DELAY = 1000;
 
     private final FileObject fileObject;
 
-    private Future<?> running;
+    private final AtomicLong version = new AtomicLong();
+
+    /* GuardedBy("this") */
+    private Check running;
 
-    private boolean cancelled;
+    /* GuardedBy("this") */
+    private RequestProcessor.Task background;
 
     public CheckstyleTask(FileObject fileObject) {
         this.fileObject = fileObject;
@@ -52,18 +65,25 @@ public class CheckstyleTask implements CancellableTask<CompilationInfo>, Cancell
 
     @Override
     public synchronized void cancel() {
+        // makes the running check stale
+        version.incrementAndGet();
         if (running != null) {
-            running.cancel(true);
+            CheckScheduler.getDefault().cancel(fileObject, running);
+            running = null;
+        }
+        if (background != null) {
+            background.cancel();
+            background = null;
         }
-        cancelled = true;
     }
 
     @Override
     public void run(CompilationInfo info) throws Exception {
-        init();
+        // supersedes any previous check
+        long stamp = version.incrementAndGet();
 
         DataObject data = DataObject.find(fileObject);
-        if (data == null || data.isModified()) {
+        if (data == null) {
             return;
         }
 
@@ -72,150 +92,268 @@ public class CheckstyleTask implements CancellableTask<CompilationInfo>, Cancell
             return;
         }
 
-        try {
-            Configuration config = ConfigurationLoader.getDefault().getConfiguration();
-
-            final File file = FileUtil.toFile(fileObject);
-            if (file == null) { // occurs for libraries for example
-                return;
-            }
-
-            Pattern ignored = config.getIgnoredPathsPattern();
-            if (ignored != null && ignored.matcher(file.getAbsolutePath()).matches()) {
-                return;
-            }
+        schedule(stamp, editor.openDocument(), data.isModified());
+    }
 
-            List<CheckstyleAnnotation> results = run(fileObject, file, editor.openDocument(), config);
-            if (!isCanceled()) {
-                setAnnotations(fileObject, results);
-            }
+    private void schedule(long stamp, StyledDocument document, boolean modified) {
+        Configuration config;
+        try {
+            config = ConfigurationLoader.getDefault().getConfiguration();
         } catch (CheckstyleException ex) {
             ErrorHandler.getDefault().handleError(fileObject, LOGGER, ex);
+            return;
         }
-    }
+        CheckstyleSettings settings = CheckstyleSettings.getDefault();
 
-    synchronized void init() {
-        running = null;
-        cancelled = false;
-    }
-
-    public synchronized boolean isCanceled() {
-        return cancelled;
-    }
+        if (modified && !settings.isCheckModified()) {
+            return;
+        }
 
-    private List<CheckstyleAnnotation> run(final FileObject fileObject, final File file,
-            final StyledDocument document, final Configuration config) throws CheckstyleException {
+        final File file = FileUtil.toFile(fileObject);
+        if (file == null) { // occurs for libraries for example
+            return;
+        }
 
-        final CollectingListener listener = new CollectingListener(config.getSeverity(),
-                document);
+        Pattern ignored = config.getIgnoredPathsPattern();
+        if (ignored != null && ignored.matcher(file.getAbsolutePath()).matches()) {
+            return;
+        }
 
-        Future<?> future;
+        Check check = new Check(stamp, file, document, config, CheckTier.INLINE, modified);
         synchronized (this) {
-            if (isCanceled()) {
-                return Collections.emptyList();
+            if (check.isCanceled()) {
+                return;
             }
+            running = check;
+        }
+        // modified documents are checked with delay to let the user finish typing
+        CheckScheduler.getDefault().schedule(fileObject, check, modified ? settings.getCheckDelay() : 0);
+    }
 
-            running = THREAD_POOL.submit(new Callable<Void>() {
-
-                @Override
-                public Void call() throws Exception {
-                    ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
-                    try {
-                        Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
-                        CancellableChecker checker = new CancellableChecker(CheckstyleTask.this);
-                        try {
-                            // classloader to load checks
-                            checker.setModuleClassLoader(config.getCheckstyleClassLoader());
-                            // classloader to load classpath
-                            //ClassPath path = ClassPath.getClassPath(fileObject, ClassPath.EXECUTE);
-                            //if (path != null) {
-                            //    checker.setClassLoader(path.getClassLoader(true));
-                            //}
-                            checker.configure(config.getCheckstyleConfiguration());
-                            checker.addListener(listener);
-
-                            checker.process(file);
-                        } finally {
-                            checker.destroy();
-                        }
-
-                        return null;
-                    } finally {
-                        Thread.currentThread().setContextClassLoader(originalClassLoader);
-                    }
-                }
-            });
-            future = running;
+    /**
+     * Publishes the results of the check unless the check is stale.
+     */
+    private synchronized void publish(Check check, ViolationStore violations) {
+        if (check.isCanceled()) {
+            return;
         }
-        try {
-            future.get();
-        } catch (ExecutionException ex) {
-            Throwable cause = ex.getCause();
-            if (cause instanceof CheckstyleException) {
-                throw (CheckstyleException) cause;
-            } else {
-                throw new RuntimeException(cause);
-            }
-        } catch (InterruptedException ex) {
-            LOGGER.log(Level.FINE, null, ex);
-            Thread.currentThread().interrupt();
-            return Collections.emptyList();
-        } catch (CancellationException ex) {
-            // XXX is there a better way than catching runtime exception
-            return Collections.emptyList();
+        setViolations(fileObject, check.tier, check.document, violations, check.aggregate);
+        if (check.tier == CheckTier.INLINE) {
+            CheckerWarmup.getDefault().firstCheckFinished();
+            scheduleBackground(check);
         }
+    }
+
+    /**
+     * Schedules the check of the background tier once the inline check
+     * has published its results.
+     */
+    /* GuardedBy("this") */
+    private void scheduleBackground(Check inline) {
+        if (background != null) {
+            background.cancel();
+            background = null;
+        }
+        if (inline.config.getTier(CheckTier.BACKGROUND) == null) {
+            // there may be the results of the previous configuration
+            setViolations(fileObject, CheckTier.BACKGROUND, inline.document, new ViolationStore(),
+                    inline.aggregate);
+            return;
+        }
+
+        Check check = new Check(inline.stamp, inline.file, inline.document, inline.config,
+                CheckTier.BACKGROUND, inline.modified);
+        background = BACKGROUND.create(check);
+        background.setPriority(Thread.MIN_PRIORITY);
+        background.schedule(BACKGROUND_DELAY);
+    }
 
-        return listener.getResults();
+    private synchronized void finished(Check check) {
+        if (running == check) {
+            running = null;
+        }
     }
 
-    private static void setAnnotations(FileObject fileObject, List<CheckstyleAnnotation> annotations) {
+    private static void setViolations(FileObject fileObject, CheckTier tier, StyledDocument document,
+            ViolationStore violations, boolean aggregate) {
         CheckstyleAnnotationContainer container = CheckstyleAnnotationContainer.getInstance(fileObject);
         if (container != null) {
-            container.setAnnotations(annotations);
+            container.setViolations(tier, document, violations, aggregate);
         } else {
             LOGGER.log(Level.INFO, "No annotation container"); // NOI18N
         }
     }
 
-    private static Position getPosition(final StyledDocument document, final int lineNumber) {
-        final AtomicReference<Position> ref = new AtomicReference<>();
-        document.render(new Runnable() {
+    private final class Check implements Runnable, CancellableChecker.CancellationHook {
+
+        private final long stamp;
+
+        private final File file;
+
+        private final StyledDocument document;
+
+        private final Configuration config;
+
+        private final CheckTier tier;
+
+        private final boolean modified;
+
+        private final boolean checkModified;
 
-            @Override
-            public void run() {
-                int offset = NbDocument.findLineOffset(document, lineNumber);
-                if (offset < 0 || offset >= document.getLength()) {
+        private final boolean aggregate;
+
+        public Check(long stamp, File file, StyledDocument document, Configuration config,
+                CheckTier tier, boolean modified) {
+            this.stamp = stamp;
+            this.file = file;
+            this.document = document;
+            this.config = config;
+            this.tier = tier;
+            this.modified = modified;
+
+            CheckstyleSettings settings = CheckstyleSettings.getDefault();
+            this.checkModified = settings.isCheckModified();
+            this.aggregate = settings.isAggregateLines();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return version.get() != stamp;
+        }
+
+        @Override
+        public void run() {
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                if (isCanceled()) {
                     return;
                 }
 
-                try {
-                    ref.set(document.createPosition(offset - NbDocument.findLineColumn(document, offset)));
-                } catch (BadLocationException ex) {
-                    LOGGER.log(Level.INFO, null, ex);
+                ViolationStore results = check();
+                if (results != null) {
+                    publish(this, results);
+                }
+            } catch (CheckstyleException ex) {
+                if (!isCanceled()) {
+                    ErrorHandler.getDefault().handleError(fileObject, LOGGER, ex);
                 }
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+                finished(this);
             }
-        });
+        }
 
-        return ref.get();
-    }
+        /**
+         * Runs the check of the file.
+         *
+         * @return the violations or <code>null</code> if the current annotations
+         *             should be kept
+         */
+        private ViolationStore check() throws CheckstyleException {
+            Configuration tierConfig = config.getTier(tier);
+            if (tierConfig == null) {
+                return new ViolationStore();
+            }
 
-    private static class CollectingListener extends CheckstyleListener<CheckstyleAnnotation> {
+            CheckstyleMetrics metrics = CheckstyleMetrics.getDefault();
+            long start = System.nanoTime();
+            long cpuStart = metrics.getCurrentThreadCpuTime();
+            CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.PROCESS)
+                    .setFile(file.getAbsolutePath());
+            try {
+                return check(tierConfig, span);
+            } finally {
+                boolean cancelled = isCanceled();
+                span.setCancelled(cancelled).commit();
+                long nanos = System.nanoTime() - start;
+                metrics.recordCheck(CheckstyleMetrics.Path.EDITOR, nanos);
+                if (cancelled) {
+                    // the wall time if the CPU time is not available
+                    metrics.recordCancelledCheck(cpuStart >= 0
+                            ? metrics.getCurrentThreadCpuTime() - cpuStart : nanos);
+                }
+            }
+        }
 
-        private final StyledDocument document;
+        private ViolationStore check(Configuration tierConfig, CheckstyleEvents.Span span)
+                throws CheckstyleException {
+
+            CheckstyleListener listener = new CheckstyleListener(config.getSeverity());
+
+            // the snapshot of the document is checked instead of the file on the disk
+            FileText text = checkModified ? DocumentText.read(file, document) : null;
+            span.setFileSize(text != null ? text.getFullText().length() : file.length());
+
+            // only the checks depending on nothing but the file are cached
+            Configuration perFileConfig = tierConfig.getPerFileChecks();
+            ViolationCache violationCache = ViolationCache.getDefault();
+            ViolationCache.Key key = text != null
+                    ? violationCache.createKey(file, text, perFileConfig)
+                    : violationCache.createKey(file, perFileConfig);
+            List<Violation> cached = key != null ? violationCache.get(key, perFileConfig) : null;
+            boolean complete;
+            if (cached != null) {
+                violationCache.replay(cached, file.getAbsolutePath(), listener);
+                span.setCacheHit(true);
+                complete = true;
+            } else {
+                complete = process(perFileConfig, text, listener, key);
+            }
 
-        public CollectingListener(Severity minimalSeverity, StyledDocument document) {
-            super(minimalSeverity);
-            this.document = document;
+            Configuration crossFileConfig = tierConfig.getCrossFileChecks();
+            if (complete && crossFileConfig != null) {
+                complete = process(crossFileConfig, text, listener, null);
+            }
+            span.setViolations(listener.getViolations().size());
+            if (!complete) {
+                return null;
+            }
+            return listener.getViolations();
         }
 
-        @Override
-        public CheckstyleAnnotation createResult(AuditEvent evt) {
-            Position position = getPosition(document, evt.getLine() - 1);
-            if (position != null) {
-                return new SevereAnnotation(document, position,
-                            evt.getMessage(), evt.getSeverityLevel());                
+        /**
+         * Runs the checks of the configuration on the file.
+         *
+         * @param key the key the results are cached with, <code>null</code>
+         *             if they should not be cached
+         * @return <code>false</code> if the results are not complete
+         */
+        private boolean process(Configuration checkConfig, FileText text, CheckstyleListener listener,
+                ViolationCache.Key key) throws CheckstyleException {
+
+            ViolationCache.Recorder recorder = new ViolationCache.Recorder();
+            Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
+            CheckerPool pool = CheckerPool.getDefault();
+            CancellableChecker checker = pool.acquireChecker(checkConfig, this);
+            try {
+                checker.addListener(listener);
+                checker.addListener(recorder);
+                if (text != null) {
+                    checker.process(file, text);
+                } else {
+                    checker.process(file);
+                }
+            } catch (CheckstyleException ex) {
+                if (!modified) {
+                    throw ex;
+                }
+                // the unsaved content is often not parseable while typing
+                LOGGER.log(Level.FINE, null, ex);
+                return false;
+            } finally {
+                checker.removeListener(recorder);
+                checker.removeListener(listener);
+                pool.releaseChecker(checker);
+            }
+
+            // cancelled checks have incomplete results
+            if (isCanceled()) {
+                return false;
+            }
+            if (key != null) {
+                ViolationCache.getDefault().put(key, recorder);
             }
-            return null;
+            return true;
         }
     }
 }
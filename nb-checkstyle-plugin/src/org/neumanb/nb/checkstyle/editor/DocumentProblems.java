@@ -0,0 +1,242 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import com.puppycrawl.tools.checkstyle.api.SeverityLevel;
+import org.neumanb.nb.checkstyle.CheckstyleEvents;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.StyledDocument;
+import org.openide.text.NbDocument;
+
+/**
+ * The problems reported for the document, kept in the compact store until
+ * they are shown. The problems are grouped to the entries each shown by
+ * the single annotation; when aggregating all the problems on the line form
+ * the single entry. The position and the annotation of the entry are created
+ * only once the {@link CheckstyleAnnotationContainer} attaches it.
+ * <p>
+ * The lines of the entries are those reported by the check, they do not
+ * follow the changes of the document. The check following the change reports
+ * the problems again.
+ * <p>
+ * This class is <i>thread safe</i>.
+ */
+final class DocumentProblems {
+
+    private static final Logger LOGGER = Logger.getLogger(DocumentProblems.class.getName());
+
+    private final StyledDocument document;
+
+    private final ViolationStore violations;
+
+    private final boolean aggregate;
+
+    // the indexes of the violations ordered by the line
+    private final int[] sorted;
+
+    // the start of each entry in the sorted indexes followed by their end
+    private final int[] starts;
+
+    /**
+     * Creates the problems of the document.
+     *
+     * @param document the document the problems belong to, may be
+     *             <code>null</code> when there are no problems
+     * @param violations the violations reported by the checks
+     * @param aggregate <code>true</code> if the problems on the same line
+     *             should be shown by the single annotation
+     */
+    public DocumentProblems(StyledDocument document, ViolationStore violations, boolean aggregate) {
+        this.document = document;
+        this.violations = violations;
+        this.aggregate = aggregate;
+        this.sorted = violations.getIndexesByLine();
+
+        int[] entryStarts = new int[sorted.length + 1];
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (!aggregate || i == 0 || getReportedLine(i) != getReportedLine(i - 1)) {
+                entryStarts[count++] = i;
+            }
+        }
+        entryStarts[count] = sorted.length;
+        this.starts = count + 1 == entryStarts.length ? entryStarts : Arrays.copyOf(entryStarts, count + 1);
+    }
+
+    public StyledDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the number of the entries.
+     *
+     * @return the number of the entries
+     */
+    public int size() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Returns the number of the problems of all the entries.
+     *
+     * @return the number of the problems
+     */
+    public int getProblemCount() {
+        return sorted.length;
+    }
+
+    /**
+     * Returns the zero based line of the entry as reported by the check.
+     *
+     * @param entry the index of the entry
+     * @return the line of the entry
+     */
+    public int getLine(int entry) {
+        return getReportedLine(starts[entry]);
+    }
+
+    /**
+     * Returns the id or the name of the check reporting the problem of
+     * the entry, the comma separated list for the aggregated entry.
+     *
+     * @param entry the index of the entry
+     * @return the source of the entry
+     */
+    public String getSource(int entry) {
+        if (!aggregate) {
+            return violations.getSource(sorted[starts[entry]]);
+        }
+        StringBuilder source = new StringBuilder();
+        for (int i = starts[entry]; i < starts[entry + 1]; i++) {
+            if (source.length() > 0) {
+                source.append(',');
+            }
+            source.append(violations.getSource(sorted[i]));
+        }
+        return source.toString();
+    }
+
+    /**
+     * Returns the message of the entry, the messages separated by the new
+     * line for the aggregated entry.
+     *
+     * @param entry the index of the entry
+     * @return the message of the entry
+     */
+    public String getMessage(int entry) {
+        if (!aggregate) {
+            return violations.getMessage(sorted[starts[entry]]);
+        }
+        StringBuilder message = new StringBuilder();
+        for (int i = starts[entry]; i < starts[entry + 1]; i++) {
+            if (message.length() > 0) {
+                message.append('\n');
+            }
+            message.append(violations.getMessage(sorted[i]));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Returns the severity of the entry, the highest one for the aggregated
+     * entry.
+     *
+     * @param entry the index of the entry
+     * @return the severity of the entry
+     */
+    public SeverityLevel getSeverityLevel(int entry) {
+        SeverityLevel level = violations.getSeverityLevel(sorted[starts[entry]]);
+        for (int i = starts[entry] + 1; i < starts[entry + 1]; i++) {
+            SeverityLevel current = violations.getSeverityLevel(sorted[i]);
+            if (current.compareTo(level) > 0) {
+                level = current;
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Creates the annotations of the given entries. All the positions
+     * are created in a single pass under the document lock. The entries
+     * on the same line share the position.
+     *
+     * @param entries the indexes of the entries ordered by the line
+     * @return the annotations of the entries, <code>null</code> for
+     *             the entries with the line out of the document
+     */
+    public List<CheckstyleAnnotation> createAnnotations(final int[] entries) {
+        final List<CheckstyleAnnotation> annotations = new ArrayList<>(entries.length);
+        if (entries.length == 0) {
+            return annotations;
+        }
+        CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.POSITION_RESOLVE)
+                .setFileSize(document.getLength())
+                .setViolations(entries.length);
+        document.render(new Runnable() {
+
+            @Override
+            public void run() {
+                Element root = NbDocument.findLineRootElement(document);
+                int length = document.getLength();
+
+                int line = -1;
+                Position position = null;
+                for (int entry : entries) {
+                    int current = getLine(entry);
+                    if (current != line) {
+                        line = current;
+                        position = createPosition(root, length, line);
+                    }
+                    annotations.add(position != null ? createAnnotation(entry, position) : null);
+                }
+            }
+        });
+        span.commit();
+        return annotations;
+    }
+
+    /**
+     * Creates the annotation of the type matching the severity, the errors
+     * are severe and the rest are warnings.
+     */
+    private CheckstyleAnnotation createAnnotation(int entry, Position position) {
+        int line = getLine(entry);
+        SeverityLevel level = getSeverityLevel(entry);
+        if (level == SeverityLevel.ERROR) {
+            return new SevereAnnotation(document, position, line, getSource(entry), getMessage(entry), level);
+        }
+        return new WarningAnnotation(document, position, line, getSource(entry), getMessage(entry), level);
+    }
+
+    /**
+     * Creates the position at the start of the line. Has to be called under
+     * the document read lock.
+     */
+    private Position createPosition(Element root, int length, int lineNumber) {
+        if (lineNumber < 0 || lineNumber >= root.getElementCount()) {
+            return null;
+        }
+        int offset = root.getElement(lineNumber).getStartOffset();
+        if (offset >= length) {
+            return null;
+        }
+
+        try {
+            return document.createPosition(offset);
+        } catch (BadLocationException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+            return null;
+        }
+    }
+
+    private int getReportedLine(int sortedIndex) {
+        // checkstyle lines are one based
+        return violations.getLine(sorted[sortedIndex]) - 1;
+    }
+}
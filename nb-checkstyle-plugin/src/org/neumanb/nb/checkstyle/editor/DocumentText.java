@@ -0,0 +1,70 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import com.puppycrawl.tools.checkstyle.api.FileText;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.text.StyledDocument;
+
+/**
+ * Creates the checkstyle {@link FileText} from the snapshot of the document.
+ * The text is read under the document read lock through the {@link Segment}
+ * so the characters are copied just once into the lines.
+ */
+final class DocumentText {
+
+    private static final Logger LOGGER = Logger.getLogger(DocumentText.class.getName());
+
+    private DocumentText() {
+        super();
+    }
+
+    public static FileText read(File file, final StyledDocument document) {
+        final List<String> lines = new ArrayList<>();
+        document.render(new Runnable() {
+
+            @Override
+            public void run() {
+                Segment segment = new Segment();
+                segment.setPartialReturn(true);
+
+                // the line spanning two segments
+                StringBuilder pending = new StringBuilder();
+                int offset = 0;
+                int length = document.getLength();
+                try {
+                    while (offset < length) {
+                        document.getText(offset, length - offset, segment);
+                        int start = segment.offset;
+                        int end = segment.offset + segment.count;
+                        for (int i = start; i < end; i++) {
+                            if (segment.array[i] == '\n') {
+                                if (pending.length() > 0) {
+                                    pending.append(segment.array, start, i - start);
+                                    lines.add(pending.toString());
+                                    pending.setLength(0);
+                                } else {
+                                    lines.add(new String(segment.array, start, i - start));
+                                }
+                                start = i + 1;
+                            }
+                        }
+                        pending.append(segment.array, start, end - start);
+                        offset += segment.count;
+                    }
+                } catch (BadLocationException ex) {
+                    LOGGER.log(Level.INFO, null, ex);
+                }
+                // same as the checkstyle there is no empty line after the last separator
+                if (pending.length() > 0) {
+                    lines.add(pending.toString());
+                }
+            }
+        });
+        return new FileText(file, lines);
+    }
+}
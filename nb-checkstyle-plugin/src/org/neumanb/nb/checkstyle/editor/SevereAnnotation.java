@@ -15,8 +15,9 @@ import javax.swing.text.StyledDocument;
  */
 public class SevereAnnotation extends CheckstyleAnnotation {
     
-    public SevereAnnotation(StyledDocument document, Position position, String shortDescription, SeverityLevel level) {
-        super(document, position, shortDescription, level);
+    public SevereAnnotation(StyledDocument document, Position position, int line, String source,
+            String shortDescription, SeverityLevel level) {
+        super(document, position, line, source, shortDescription, level);
     }
     
     @Override
@@ -0,0 +1,62 @@
+package org.neumanb.nb.checkstyle.editor;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.StyledDocument;
+import org.openide.text.Annotation;
+import org.openide.text.NbDocument;
+import org.openide.util.NbBundle;
+
+/**
+ * The annotation on the first line of the document reporting the number
+ * of the problems which are not attached to the document.
+ */
+public class SummaryAnnotation extends Annotation {
+
+    private static final Logger LOGGER = Logger.getLogger(SummaryAnnotation.class.getName());
+
+    private final StyledDocument document;
+
+    private final Position position;
+
+    private final int count;
+
+    private SummaryAnnotation(StyledDocument document, Position position, int count) {
+        this.document = document;
+        this.position = position;
+        this.count = count;
+    }
+
+    public static SummaryAnnotation create(StyledDocument document, int count) {
+        try {
+            return new SummaryAnnotation(document, document.createPosition(0), count);
+        } catch (BadLocationException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+            return null;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void documentAttach() {
+        NbDocument.addAnnotation(document, position, -1, this);
+    }
+
+    public void documentDetach() {
+        NbDocument.removeAnnotation(document, this);
+    }
+
+    @Override
+    public String getAnnotationType() {
+        return "org-neumanb-nb-checkstyle-resources-checkstyle-summary-annotation"; // NOI18N
+    }
+
+    @Override
+    public String getShortDescription() {
+        return NbBundle.getMessage(SummaryAnnotation.class, "SummaryAnnotation.description", count);
+    }
+}
@@ -1,14 +1,24 @@
 package org.neumanb.nb.checkstyle.options;
 
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import org.neumanb.nb.checkstyle.CheckProfiler;
 import org.neumanb.nb.checkstyle.CheckstyleSettings;
+import org.neumanb.nb.checkstyle.ConfigurationLoader;
 import org.neumanb.nb.checkstyle.Severity;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
@@ -24,6 +34,7 @@ import org.openide.util.HelpCtx;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle;
 import org.openide.util.NbCollections;
+import org.openide.util.RequestProcessor;
 
 /**
  * Class implementing the controller for the options dialog. Presents the
@@ -34,10 +45,17 @@ import org.openide.util.NbCollections;
 public class CheckstyleOptionsController extends OptionsPanelController
         implements ActionListener {
 
+    private static final Logger LOGGER = Logger.getLogger(CheckstyleOptionsController.class.getName());
+
     private static final FileFilter CONFIG_FILE_FILTER = new ConfigFileFilter();
 
     private static final FileFilter PROPERTY_FILE_FILTER = new PropertyFileFilter();
 
+    private static final FileFilter CSV_FILE_FILTER = new CsvFileFilter();
+
+    private static final RequestProcessor LOADER = new RequestProcessor(
+            CheckstyleOptionsController.class.getName());
+
     private CheckstyleOptionsPanel panel;
 
     private volatile boolean initialized;
@@ -62,6 +80,7 @@ public class CheckstyleOptionsController extends OptionsPanelController
 
         // TODO remove UI from controller
         panel.severityComboBox.setSelectedItem(values.getCustomSeverity());
+        updatePrunedModules();
         panel.configFileLocationField.setText(values.getCustomConfigFile());
         panel.propertyFileLocationField.setText(values.getCustomPropertyFile());
 
@@ -82,6 +101,16 @@ public class CheckstyleOptionsController extends OptionsPanelController
 
         panel.ignoredPathsArea.setText(values.getIgnoredPathsPattern());
 
+        panel.checkModifiedCheckBox.setSelected(values.isCheckModified());
+        panel.checkDelaySpinner.setValue(values.getCheckDelay());
+        panel.checkDelaySpinner.setEnabled(values.isCheckModified());
+        panel.aggregateLinesCheckBox.setSelected(values.isAggregateLines());
+        panel.backgroundChecksField.setText(values.getBackgroundChecks());
+        panel.parallelScanCheckBox.setSelected(values.isParallelScan());
+
+        // profiling is not persisted, it is meant for the current session only
+        panel.profileCheckBox.setSelected(CheckProfiler.getDefault().isEnabled());
+
         initialized = true;
     }
 
@@ -95,9 +124,13 @@ public class CheckstyleOptionsController extends OptionsPanelController
 
         CheckstyleSettings.Values values = new CheckstyleSettings.Values(
                 (Severity) panel.severityComboBox.getSelectedItem(), panel.configFileLocationField.getText(),
-                panel.propertyFileLocationField.getText(), classpath, properties, panel.ignoredPathsArea.getText());
+                panel.propertyFileLocationField.getText(), classpath, properties, panel.ignoredPathsArea.getText(),
+                panel.checkModifiedCheckBox.isSelected(), (Integer) panel.checkDelaySpinner.getValue(),
+                panel.aggregateLinesCheckBox.isSelected(), panel.backgroundChecksField.getText(),
+                panel.parallelScanCheckBox.isSelected());
 
         CheckstyleSettings.getDefault().setValues(values);
+        CheckProfiler.getDefault().setEnabled(panel.profileCheckBox.isSelected());
     }
 
     /**
@@ -131,6 +164,9 @@ public class CheckstyleOptionsController extends OptionsPanelController
             panel = new CheckstyleOptionsPanel();
             panel.configFileBrowseButton.addActionListener(this);
             panel.propertyFileBrowseButton.addActionListener(this);
+            panel.checkModifiedCheckBox.addActionListener(this);
+            panel.exportProfileButton.addActionListener(this);
+            panel.resetProfileButton.addActionListener(this);
         }
         return panel;
     }
@@ -172,6 +208,71 @@ public class CheckstyleOptionsController extends OptionsPanelController
             openFileDialog(NbBundle.getMessage(CheckstyleOptionsController.class,
                     "CheckstyleOptionsController.openPropertyFileDialog"),
                     PROPERTY_FILE_FILTER, panel.propertyFileLocationField);
+        } else if (e.getSource() == panel.checkModifiedCheckBox) {
+            panel.checkDelaySpinner.setEnabled(panel.checkModifiedCheckBox.isSelected());
+        } else if (e.getSource() == panel.exportProfileButton) {
+            exportProfile();
+        } else if (e.getSource() == panel.resetProfileButton) {
+            CheckProfiler.getDefault().reset();
+        }
+    }
+
+    /**
+     * Updates the label of the pruned modules. The configuration may have
+     * to be loaded, so the count is read out of the EDT.
+     */
+    private void updatePrunedModules() {
+        panel.prunedModulesLabel.setText(null);
+        LOADER.post(new Runnable() {
+
+            @Override
+            public void run() {
+                final String text = getPrunedModulesText();
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        panel.prunedModulesLabel.setText(text);
+                    }
+                });
+            }
+        });
+    }
+
+    private static String getPrunedModulesText() {
+        try {
+            int count = ConfigurationLoader.getDefault().getConfiguration().getPrunedCount();
+            if (count > 0) {
+                return NbBundle.getMessage(CheckstyleOptionsController.class,
+                        "CheckstyleOptionsController.prunedModules", count);
+            }
+        } catch (CheckstyleException ex) {
+            // the error is reported elsewhere
+        }
+        return null;
+    }
+
+    private void exportProfile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle(NbBundle.getMessage(CheckstyleOptionsController.class,
+                "CheckstyleOptionsController.exportProfileDialog"));
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.addChoosableFileFilter(CSV_FILE_FILTER);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+        int ret = fileChooser.showSaveDialog(SwingUtilities.getWindowAncestor(panel));
+        if (ret != JFileChooser.APPROVE_OPTION || fileChooser.getSelectedFile() == null) {
+            return;
+        }
+
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().contains(".")) { // NOI18N
+            file = new File(file.getParentFile(), file.getName() + ".csv"); // NOI18N
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            CheckProfiler.getDefault().exportCsv(writer);
+        } catch (IOException ex) {
+            LOGGER.log(Level.INFO, null, ex);
         }
     }
 
@@ -217,6 +318,18 @@ public class CheckstyleOptionsController extends OptionsPanelController
             }
     }
 
+    private static class CsvFileFilter extends FileFilter {
+
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().endsWith(".csv"); // NOI18N
+        }
+
+        public String getDescription() {
+            return NbBundle.getMessage(CheckstyleOptionsController.class,
+                    "CheckstyleOptionsController.csvFileFilter");
+            }
+    }
+
     private static class ClasspathProperty extends PropertySupport.ReadWrite<NbClassPath> {
 
         private List<File> classpath;
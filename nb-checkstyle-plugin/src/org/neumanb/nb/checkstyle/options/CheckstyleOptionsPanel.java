@@ -47,6 +47,8 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
         severityLabel = new javax.swing.JLabel();
         ignoredPathsLabel = new javax.swing.JLabel();
         ignoredPathsScrollPane = new javax.swing.JScrollPane();
+        checkDelayLabel = new javax.swing.JLabel();
+        backgroundChecksLabel = new javax.swing.JLabel();
 
         classpathPanel.setLayout(new java.awt.BorderLayout());
 
@@ -83,6 +85,28 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
         ignoredPathsScrollPane.setViewportView(ignoredPathsArea);
         ignoredPathsArea.getAccessibleContext().setAccessibleName(org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.ignoredPathsArea.AccessibleContext.accessibleName")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(checkModifiedCheckBox, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.checkModifiedCheckBox.text")); // NOI18N
+
+        checkDelayLabel.setLabelFor(checkDelaySpinner);
+        org.openide.awt.Mnemonics.setLocalizedText(checkDelayLabel, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.checkDelayLabel.text")); // NOI18N
+
+        checkDelaySpinner.setModel(new javax.swing.SpinnerNumberModel(300, 0, 10000, 50));
+
+        org.openide.awt.Mnemonics.setLocalizedText(aggregateLinesCheckBox, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.aggregateLinesCheckBox.text")); // NOI18N
+
+        backgroundChecksLabel.setLabelFor(backgroundChecksField);
+        org.openide.awt.Mnemonics.setLocalizedText(backgroundChecksLabel, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.backgroundChecksLabel.text")); // NOI18N
+
+        backgroundChecksField.setToolTipText(org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.backgroundChecksField.toolTipText")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(parallelScanCheckBox, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.parallelScanCheckBox.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(profileCheckBox, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.profileCheckBox.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(exportProfileButton, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.exportProfileButton.text")); // NOI18N
+
+        org.openide.awt.Mnemonics.setLocalizedText(resetProfileButton, org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.resetProfileButton.text")); // NOI18N
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
         this.setLayout(layout);
         layout.setHorizontalGroup(
@@ -90,6 +114,8 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
             .addGroup(layout.createSequentialGroup()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(severityLabel)
+                    .addComponent(checkDelayLabel)
+                    .addComponent(backgroundChecksLabel)
                     .addComponent(configFileLabel)
                     .addComponent(propertyFileLabel)
                     .addComponent(propertiesLabel)
@@ -102,7 +128,14 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addGroup(layout.createSequentialGroup()
                                 .addComponent(severityComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                                .addComponent(prunedModulesLabel)
                                 .addGap(0, 206, Short.MAX_VALUE))
+                            .addComponent(checkModifiedCheckBox)
+                            .addComponent(checkDelaySpinner, javax.swing.GroupLayout.PREFERRED_SIZE, 80, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(aggregateLinesCheckBox)
+                            .addComponent(backgroundChecksField)
+                            .addComponent(parallelScanCheckBox)
                             .addComponent(configFileLocationField)
                             .addComponent(propertyFileLocationField))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
@@ -111,14 +144,35 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
                             .addComponent(propertyFileBrowseButton)))
                     .addComponent(classpathPanel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(propertiesPanel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                    .addComponent(ignoredPathsScrollPane)))
+                    .addComponent(ignoredPathsScrollPane)
+                    .addGroup(layout.createSequentialGroup()
+                        .addComponent(profileCheckBox)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                        .addComponent(exportProfileButton)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(resetProfileButton))))
         );
         layout.setVerticalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(layout.createSequentialGroup()
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(severityLabel)
-                    .addComponent(severityComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(severityComboBox, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(prunedModulesLabel))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(checkModifiedCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(checkDelayLabel)
+                    .addComponent(checkDelaySpinner, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(aggregateLinesCheckBox)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(backgroundChecksLabel)
+                    .addComponent(backgroundChecksField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(parallelScanCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(configFileLabel)
@@ -142,7 +196,12 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
                     .addComponent(classpathPanel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(classpathLabel)
-                        .addGap(0, 0, Short.MAX_VALUE))))
+                        .addGap(0, 0, Short.MAX_VALUE)))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(profileCheckBox)
+                    .addComponent(exportProfileButton)
+                    .addComponent(resetProfileButton)))
         );
 
         configFileLocationField.getAccessibleContext().setAccessibleName(org.openide.util.NbBundle.getMessage(CheckstyleOptionsPanel.class, "CheckstyleOptionsPanel.configFileLocationField.AccessibleContext.accessibleName")); // NOI18N
@@ -152,19 +211,30 @@ public class CheckstyleOptionsPanel extends javax.swing.JPanel {
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
+    final javax.swing.JCheckBox aggregateLinesCheckBox = new javax.swing.JCheckBox();
+    final javax.swing.JTextField backgroundChecksField = new javax.swing.JTextField();
+    private javax.swing.JLabel backgroundChecksLabel;
+    private javax.swing.JLabel checkDelayLabel;
+    final javax.swing.JSpinner checkDelaySpinner = new javax.swing.JSpinner();
+    final javax.swing.JCheckBox checkModifiedCheckBox = new javax.swing.JCheckBox();
     final javax.swing.JLabel classpathLabel = new javax.swing.JLabel();
     final javax.swing.JPanel classpathPanel = new javax.swing.JPanel();
     final javax.swing.JButton configFileBrowseButton = new javax.swing.JButton();
     private javax.swing.JLabel configFileLabel;
     final javax.swing.JTextField configFileLocationField = new javax.swing.JTextField();
+    final javax.swing.JButton exportProfileButton = new javax.swing.JButton();
     final javax.swing.JTextArea ignoredPathsArea = new javax.swing.JTextArea();
     private javax.swing.JLabel ignoredPathsLabel;
     private javax.swing.JScrollPane ignoredPathsScrollPane;
+    final javax.swing.JCheckBox parallelScanCheckBox = new javax.swing.JCheckBox();
     final javax.swing.JLabel propertiesLabel = new javax.swing.JLabel();
     final javax.swing.JPanel propertiesPanel = new javax.swing.JPanel();
     final javax.swing.JButton propertyFileBrowseButton = new javax.swing.JButton();
     private javax.swing.JLabel propertyFileLabel;
+    final javax.swing.JCheckBox profileCheckBox = new javax.swing.JCheckBox();
     final javax.swing.JTextField propertyFileLocationField = new javax.swing.JTextField();
+    final javax.swing.JLabel prunedModulesLabel = new javax.swing.JLabel();
+    final javax.swing.JButton resetProfileButton = new javax.swing.JButton();
     final javax.swing.JComboBox severityComboBox = new javax.swing.JComboBox();
     private javax.swing.JLabel severityLabel;
     // End of variables declaration//GEN-END:variables
@@ -0,0 +1,300 @@
+package org.neumanb.nb.checkstyle.tasklist;
+
+import com.puppycrawl.tools.checkstyle.Checker;
+import com.puppycrawl.tools.checkstyle.api.AuditEvent;
+import com.puppycrawl.tools.checkstyle.api.AuditListener;
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.utils.CommonUtil;
+import org.neumanb.nb.checkstyle.CheckstyleListener;
+import org.neumanb.nb.checkstyle.Configuration;
+import org.neumanb.nb.checkstyle.Severity;
+import org.neumanb.nb.checkstyle.ViolationCache;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.filesystems.FileObject;
+
+/**
+ * The files of the single directory checked by the single call
+ * of {@link Checker#process(List)}. The checks are set up and finished
+ * just once for the whole batch and the checks working across the files
+ * of the package see all of them. The violations are split back to the files
+ * by the name of the file reported with them, which is relative to
+ * the <code>basedir</code> of the checker when it is set. The events with
+ * the name not known are given to the file being processed.
+ * <p>
+ * When the check of some file fails the whole batch is aborted by the checker,
+ * all the files are then checked one by one so the failure is reported only
+ * for the file causing it and the other files get the complete results.
+ * <p>
+ * This class is <i>not thread safe</i>.
+ */
+final class BatchCheck {
+
+    /**
+     * The maximal number of the files in the batch.
+     */
+    static final int MAX_FILES = 32;
+
+    private static final Logger LOGGER = Logger.getLogger(BatchCheck.class.getName());
+
+    private static final String BASEDIR_PROPERTY = "basedir"; // NOI18N
+
+    private final Configuration config;
+
+    private final String basedir;
+
+    private final Map<String, Item> items = new HashMap<>();
+
+    private final List<Item> order = new ArrayList<>();
+
+    public BatchCheck(Configuration config) {
+        this.config = config;
+        this.basedir = getBasedir(config.getCheckstyleConfiguration());
+    }
+
+    /**
+     * Adds the file to the batch.
+     *
+     * @param fileObject the file to check
+     * @param file the file on the disk
+     * @param key the key of the violation cache, <code>null</code> if
+     *             the result should not be cached
+     * @return the item of the file holding the result once processed
+     */
+    public Item add(FileObject fileObject, File file, ViolationCache.Key key) {
+        Item item = new Item(fileObject, file, key);
+        items.put(getReportedName(file), item);
+        order.add(item);
+        return item;
+    }
+
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(order);
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    public boolean isFull() {
+        return order.size() >= MAX_FILES;
+    }
+
+    /**
+     * Checks all the files of the batch and stores the results
+     * to the violation cache.
+     *
+     * @param checker the configured checker
+     */
+    public void process(Checker checker) {
+        if (order.isEmpty()) {
+            return;
+        }
+
+        List<File> files = new ArrayList<>(order.size());
+        for (Item item : order) {
+            item.reset(config.getSeverity());
+            files.add(item.file);
+        }
+
+        AuditListener dispatcher = new Dispatcher();
+        checker.addListener(dispatcher);
+        try {
+            checker.process(files);
+        } catch (CheckstyleException ex) {
+            LOGGER.log(Level.FINE, "Batch aborted, checking the files one by one", ex);
+            processSeparately(checker);
+        } finally {
+            checker.removeListener(dispatcher);
+        }
+
+        ViolationCache violationCache = ViolationCache.getDefault();
+        for (Item item : order) {
+            if (item.error == null && item.key != null) {
+                violationCache.put(item.key, item.recorder);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the file as reported by the checker.
+     */
+    private String getReportedName(File file) {
+        try {
+            return CommonUtil.relativizeAndNormalizePath(basedir, file.getAbsolutePath());
+        } catch (IllegalArgumentException ex) {
+            // the checker can't relativize it either
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static String getBasedir(com.puppycrawl.tools.checkstyle.api.Configuration configuration) {
+        if (configuration == null
+                || !Arrays.asList(configuration.getPropertyNames()).contains(BASEDIR_PROPERTY)) {
+            return null;
+        }
+        try {
+            return configuration.getProperty(BASEDIR_PROPERTY);
+        } catch (CheckstyleException ex) {
+            return null;
+        }
+    }
+
+    private void processSeparately(Checker checker) {
+        for (Item item : order) {
+            item.reset(config.getSeverity());
+            try {
+                checker.process(Collections.singletonList(item.file));
+            } catch (CheckstyleException ex) {
+                item.error = ex;
+            }
+        }
+    }
+
+    /**
+     * The file of the batch.
+     */
+    static final class Item {
+
+        private final FileObject fileObject;
+
+        private final File file;
+
+        private final ViolationCache.Key key;
+
+        private CheckstyleListener listener;
+
+        private ViolationCache.Recorder recorder;
+
+        private CheckstyleException error;
+
+        private long started;
+
+        private long nanos;
+
+        private Item(FileObject fileObject, File file, ViolationCache.Key key) {
+            this.fileObject = fileObject;
+            this.file = file;
+            this.key = key;
+        }
+
+        public FileObject getFileObject() {
+            return fileObject;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public ViolationCache.Key getKey() {
+            return key;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        /**
+         * Returns the time spent on the file. The set up and the finish
+         * of the checks shared by the whole batch are not included.
+         *
+         * @return the time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Returns the violations of the file.
+         *
+         * @return the violations of the file
+         * @throws CheckstyleException if the check of the file failed
+         */
+        public ViolationStore getViolations() throws CheckstyleException {
+            if (error != null) {
+                throw error;
+            }
+            return listener.getViolations();
+        }
+
+        private void reset(Severity severity) {
+            listener = new CheckstyleListener(severity);
+            recorder = new ViolationCache.Recorder();
+            error = null;
+            nanos = 0;
+        }
+    }
+
+    /**
+     * Routes the events to the listeners of the file they belong to.
+     */
+    private final class Dispatcher implements AuditListener {
+
+        // the file between its start and finish events
+        private Item current;
+
+        @Override
+        public void addError(AuditEvent evt) {
+            Item item = find(evt);
+            if (item != null) {
+                item.listener.addError(evt);
+                item.recorder.addError(evt);
+            }
+        }
+
+        @Override
+        public void addException(AuditEvent evt, Throwable throwable) {
+            Item item = find(evt);
+            if (item != null) {
+                item.listener.addException(evt, throwable);
+                item.recorder.addException(evt, throwable);
+            }
+        }
+
+        @Override
+        public void auditStarted(AuditEvent evt) {
+        }
+
+        @Override
+        public void auditFinished(AuditEvent evt) {
+        }
+
+        @Override
+        public void fileStarted(AuditEvent evt) {
+            // not the previous file
+            current = null;
+            current = find(evt);
+            if (current != null) {
+                current.started = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void fileFinished(AuditEvent evt) {
+            Item item = find(evt);
+            if (item != null) {
+                item.nanos += System.nanoTime() - item.started;
+            }
+            current = null;
+        }
+
+        private Item find(AuditEvent evt) {
+            Item item = evt.getFileName() != null ? items.get(evt.getFileName()) : null;
+            if (item == null) {
+                item = current;
+            }
+            if (item == null && LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Event of the file out of the batch: {0}", evt.getFileName());
+            }
+            return item;
+        }
+    }
+}
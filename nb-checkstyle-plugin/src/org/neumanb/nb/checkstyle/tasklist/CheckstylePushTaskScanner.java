@@ -0,0 +1,478 @@
+package org.neumanb.nb.checkstyle.tasklist;
+
+import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import org.neumanb.nb.checkstyle.CancellableChecker;
+import org.neumanb.nb.checkstyle.CheckerCache;
+import org.neumanb.nb.checkstyle.CheckstyleEvents;
+import org.neumanb.nb.checkstyle.CheckstyleListener;
+import org.neumanb.nb.checkstyle.CheckstyleMetrics;
+import org.neumanb.nb.checkstyle.CheckstyleSettings;
+import org.neumanb.nb.checkstyle.Configuration;
+import org.neumanb.nb.checkstyle.ConfigurationLoader;
+import org.neumanb.nb.checkstyle.ViolationCache;
+import org.neumanb.nb.checkstyle.ViolationStore;
+import org.neumanb.nb.checkstyle.error.ErrorHandler;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.netbeans.api.java.classpath.ClassPath;
+import org.netbeans.spi.tasklist.PushTaskScanner;
+import org.netbeans.spi.tasklist.Task;
+import org.netbeans.spi.tasklist.TaskScanningScope;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileChangeListener;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.NbBundle;
+
+/**
+ * The scanner walking the scope itself and checking the files in parallel.
+ * The files are checked on the bounded fork-join pool, each worker leases
+ * a single checker for the whole scan and returns it once the scan finishes.
+ * The files of each folder are checked in the batches, see {@link BatchCheck}.
+ * The tasks of each file are pushed as soon as its batch is checked. The scan
+ * is cancelled when the scope changes; the file being checked is finished
+ * but its tasks are dropped.
+ * <p>
+ * The scanner is active only when the parallel scan is enabled, otherwise
+ * the {@link CheckstyleTaskScanner} provides the tasks.
+ */
+public class CheckstylePushTaskScanner extends PushTaskScanner implements PropertyChangeListener {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckstylePushTaskScanner.class.getName());
+
+    // bounds the number of the checkers leased at once
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // the scope the task list scans, also when the scanner is not active
+    private static volatile TaskScanningScope scanningScope;
+
+    private final CheckerCache checkerCache = new CheckerCache();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final FileChangeListener fileListener = new FileChangeAdapter() {
+
+        @Override
+        public void fileDataCreated(FileEvent fe) {
+            fileModified(fe.getFile());
+        }
+
+        @Override
+        public void fileChanged(FileEvent fe) {
+            fileModified(fe.getFile());
+        }
+
+        @Override
+        public void fileRenamed(FileRenameEvent fe) {
+            fileModified(fe.getFile());
+        }
+    };
+
+    /* GuardedBy("this") */
+    private TaskScanningScope scope;
+
+    /* GuardedBy("this") */
+    private Callback callback;
+
+    /* GuardedBy("this") */
+    private final List<FileObject> observed = new ArrayList<>();
+
+    public CheckstylePushTaskScanner() {
+        super(NbBundle.getMessage(CheckstylePushTaskScanner.class, "CheckstylePushTaskScanner.label"),
+                NbBundle.getMessage(CheckstylePushTaskScanner.class, "CheckstylePushTaskScanner.hint"),
+                "Advanced/org-neumanb-nb-checkstyle-options-CheckstyleOptions"); // NOI18N
+    }
+
+    @Override
+    public synchronized void setScope(TaskScanningScope scope, Callback callback) {
+        if (this.callback == null && callback != null) {
+            CheckstyleSettings.getDefault().addPropertyChangeListener(this);
+        } else if (this.callback != null && callback == null) {
+            CheckstyleSettings.getDefault().removePropertyChangeListener(this);
+        }
+
+        // makes the running scans stale
+        long stamp = version.incrementAndGet();
+        for (FileObject fileObject : observed) {
+            if (fileObject.isFolder()) {
+                fileObject.removeRecursiveListener(fileListener);
+            } else {
+                fileObject.removeFileChangeListener(fileListener);
+            }
+        }
+        observed.clear();
+
+        this.scope = scope;
+        this.callback = callback;
+        scanningScope = callback != null ? scope : null;
+        if (scope == null || callback == null) {
+            return;
+        }
+
+        for (FileObject fileObject : scope) {
+            if (fileObject.isFolder()) {
+                fileObject.addRecursiveListener(fileListener);
+            } else {
+                fileObject.addFileChangeListener(fileListener);
+            }
+            observed.add(fileObject);
+        }
+        POOL.execute(new Scan(stamp, callback, new ArrayList<>(observed), true));
+    }
+
+    /**
+     * Returns the scope the task list currently scans. It is known even
+     * when the parallel scan is disabled.
+     *
+     * @return the scope or <code>null</code> if not known
+     */
+    static TaskScanningScope getScanningScope() {
+        return scanningScope;
+    }
+
+    @Override
+    public synchronized void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getPropertyName() == null
+                || CheckstyleSettings.isConfigurationProperty(evt.getPropertyName())) {
+            // checkers for the old configuration would never be hit again
+            checkerCache.clear();
+        }
+        if (callback != null) {
+            setScope(scope, callback);
+        }
+    }
+
+    private synchronized void fileModified(FileObject fileObject) {
+        if (callback == null || !isJava(fileObject) || !scope.isInScope(fileObject)) {
+            return;
+        }
+        POOL.execute(new Scan(version.get(), callback, Collections.singletonList(fileObject), false));
+    }
+
+    private static boolean isJava(FileObject fileObject) {
+        return fileObject.isData() && "java".equalsIgnoreCase(fileObject.getExt()); // NOI18N
+    }
+
+    /**
+     * The scan of the files and folders. Each worker thread holds its own
+     * checker; the check of the batch does not fork so the checker
+     * is never used by two checks at once. The scan is stamped with
+     * the version so it is cancelled by the change of the scope.
+     */
+    private final class Scan extends RecursiveAction {
+
+        private final long stamp;
+
+        private final Callback callback;
+
+        private final List<FileObject> roots;
+
+        private final boolean full;
+
+        private final Map<Thread, Lease> leases = new ConcurrentHashMap<>();
+
+        // published to the workers by the fork
+        private Configuration config;
+
+        public Scan(long stamp, Callback callback, List<FileObject> roots, boolean full) {
+            this.stamp = stamp;
+            this.callback = callback;
+            this.roots = roots;
+            this.full = full;
+        }
+
+        public boolean isStale() {
+            return version.get() != stamp;
+        }
+
+        @Override
+        protected void compute() {
+            if (isStale()) {
+                return;
+            }
+            try {
+                config = ConfigurationLoader.getDefault().getConfiguration();
+            } catch (CheckstyleException ex) {
+                ErrorHandler.getDefault().handleError(null, LOGGER, ex);
+                return;
+            }
+            if (!CheckstyleSettings.getDefault().isParallelScan()) {
+                // the tasks may remain from the time the scan was enabled
+                if (full) {
+                    callback.clearAllTasks();
+                }
+                return;
+            }
+
+            callback.started();
+            try {
+                if (full) {
+                    callback.clearAllTasks();
+                }
+                List<RecursiveAction> actions = new ArrayList<>(roots.size());
+                for (FileObject root : roots) {
+                    addAction(actions, root);
+                }
+                invokeAll(actions);
+            } finally {
+                for (Lease lease : leases.values()) {
+                    checkerCache.releaseChecker(lease.checker);
+                }
+                leases.clear();
+                checkerCache.reset();
+                // the started scan is always finished, the stale one just pushes no tasks
+                callback.finished();
+            }
+        }
+
+        private void addAction(List<RecursiveAction> actions, FileObject fileObject) {
+            if (fileObject.isFolder()) {
+                actions.add(new FolderScan(fileObject));
+            } else if (isJava(fileObject)) {
+                actions.add(new BatchScan(Collections.singletonList(fileObject)));
+            }
+        }
+
+        /**
+         * Checks the files of the single folder. The cached files are pushed
+         * right away, the rest is checked by the single batch. The checks
+         * depending on more than the checked file are not cached, they run
+         * on all the files by the batch of their own; the files are pushed
+         * once it is checked.
+         */
+        private void check(List<FileObject> fileObjects) {
+            if (isStale()) {
+                return;
+            }
+
+            Configuration perFileConfig = config.getPerFileChecks();
+            Configuration crossFileConfig = config.getCrossFileChecks();
+            Pattern ignored = config.getIgnoredPathsPattern();
+            ViolationCache violationCache = ViolationCache.getDefault();
+            BatchCheck batch = new BatchCheck(perFileConfig);
+            BatchCheck crossFileBatch = crossFileConfig != null ? new BatchCheck(crossFileConfig) : null;
+            Map<FileObject, ViolationStore> replayed = new LinkedHashMap<>();
+            for (FileObject fileObject : fileObjects) {
+                File file = FileUtil.toFile(fileObject);
+                if (file == null) { // occurs for libraries for example
+                    continue;
+                }
+                if (ignored != null && ignored.matcher(file.getAbsolutePath()).matches()) {
+                    push(fileObject, Collections.<Task>emptyList());
+                    continue;
+                }
+
+                if (crossFileBatch != null) {
+                    crossFileBatch.add(fileObject, file, null);
+                }
+                ViolationCache.Key key = violationCache.createKey(file, perFileConfig);
+                List<Violation> cached = key != null ? violationCache.get(key, perFileConfig) : null;
+                if (cached != null) {
+                    CheckstyleListener listener = new CheckstyleListener(config.getSeverity());
+                    violationCache.replay(cached, file.getAbsolutePath(), listener);
+                    if (crossFileBatch != null) {
+                        replayed.put(fileObject, listener.getViolations());
+                    } else {
+                        push(fileObject, CheckstyleTaskScanner.createTasks(fileObject,
+                                listener.getViolations()));
+                    }
+                } else {
+                    batch.add(fileObject, file, key);
+                }
+            }
+
+            if (batch.size() > 0 && !process(batch, false)) {
+                return;
+            }
+            if (crossFileBatch == null) {
+                push(batch, Collections.<FileObject, BatchCheck.Item>emptyMap());
+                return;
+            }
+            if (crossFileBatch.size() == 0 || !process(crossFileBatch, true)) {
+                return;
+            }
+
+            Map<FileObject, BatchCheck.Item> crossFileItems = new HashMap<>();
+            for (BatchCheck.Item item : crossFileBatch.getItems()) {
+                crossFileItems.put(item.getFileObject(), item);
+            }
+            push(batch, crossFileItems);
+            for (Map.Entry<FileObject, ViolationStore> entry : replayed.entrySet()) {
+                push(entry.getKey(), entry.getValue(), crossFileItems.get(entry.getKey()));
+            }
+        }
+
+        /**
+         * Checks the files of the batch by the leased checker or by the checker
+         * of the checks depending on more than the checked file.
+         *
+         * @return <code>false</code> if the check failed or the scan is stale
+         */
+        private boolean process(BatchCheck batch, boolean crossFile) {
+            if (isStale()) {
+                return false;
+            }
+
+            FileObject first = batch.getItems().get(0).getFileObject();
+            CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.PROCESS)
+                    .setFile(first.getParent() != null ? first.getParent().getPath() : first.getPath());
+            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
+                if (!crossFile) {
+                    batch.process(getChecker(first));
+                } else {
+                    // the checks without the tree walker are cheap to configure
+                    CancellableChecker checker = checkerCache.acquireChecker(first,
+                            config.getCrossFileChecks());
+                    try {
+                        batch.process(checker);
+                    } finally {
+                        checkerCache.releaseChecker(checker);
+                    }
+                }
+            } catch (CheckstyleException ex) {
+                ErrorHandler.getDefault().handleError(first, LOGGER, ex);
+                return false;
+            } finally {
+                Thread.currentThread().setContextClassLoader(originalClassLoader);
+                span.setCancelled(isStale()).commit();
+            }
+            return true;
+        }
+
+        private void push(BatchCheck batch, Map<FileObject, BatchCheck.Item> crossFileItems) {
+            for (BatchCheck.Item item : batch.getItems()) {
+                CheckstyleMetrics.getDefault().recordCheck(CheckstyleMetrics.Path.TASK_LIST, item.getNanos());
+                ViolationStore violations;
+                try {
+                    violations = item.getViolations();
+                } catch (CheckstyleException ex) {
+                    ErrorHandler.getDefault().handleError(item.getFileObject(), LOGGER, ex);
+                    push(item.getFileObject(), Collections.<Task>emptyList());
+                    continue;
+                }
+                push(item.getFileObject(), violations, crossFileItems.get(item.getFileObject()));
+            }
+        }
+
+        private void push(FileObject fileObject, ViolationStore violations, BatchCheck.Item crossFileItem) {
+            ViolationStore result = violations;
+            if (crossFileItem != null) {
+                result = new ViolationStore();
+                result.addAll(violations);
+                try {
+                    result.addAll(crossFileItem.getViolations());
+                } catch (CheckstyleException ex) {
+                    ErrorHandler.getDefault().handleError(fileObject, LOGGER, ex);
+                }
+            }
+            push(fileObject, CheckstyleTaskScanner.createTasks(fileObject, result));
+        }
+
+        /**
+         * Returns the checker leased by the current worker. The checker
+         * is replaced when the file belongs to the other classpath.
+         */
+        private CancellableChecker getChecker(FileObject fileObject) throws CheckstyleException {
+            Thread worker = Thread.currentThread();
+            ClassPath path = ClassPath.getClassPath(fileObject, ClassPath.EXECUTE);
+            Lease lease = leases.get(worker);
+            if (lease != null) {
+                if (lease.path == path) {
+                    return lease.checker;
+                }
+                leases.remove(worker);
+                checkerCache.releaseChecker(lease.checker);
+            }
+
+            CancellableChecker checker = checkerCache.acquireChecker(fileObject, config.getPerFileChecks());
+            leases.put(worker, new Lease(checker, path));
+            return checker;
+        }
+
+        private void push(FileObject fileObject, List<Task> tasks) {
+            if (!isStale()) {
+                callback.setTasks(fileObject, tasks);
+            } else if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Dropped tasks of {0}, the scan was cancelled", fileObject.getNameExt());
+            }
+        }
+
+        private final class FolderScan extends RecursiveAction {
+
+            private final FileObject folder;
+
+            public FolderScan(FileObject folder) {
+                this.folder = folder;
+            }
+
+            @Override
+            protected void compute() {
+                if (isStale()) {
+                    return;
+                }
+                List<RecursiveAction> actions = new ArrayList<>();
+                List<FileObject> batch = new ArrayList<>(BatchCheck.MAX_FILES);
+                for (FileObject child : folder.getChildren()) {
+                    if (child.isFolder()) {
+                        actions.add(new FolderScan(child));
+                    } else if (isJava(child)) {
+                        batch.add(child);
+                        if (batch.size() >= BatchCheck.MAX_FILES) {
+                            actions.add(new BatchScan(batch));
+                            batch = new ArrayList<>(BatchCheck.MAX_FILES);
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    actions.add(new BatchScan(batch));
+                }
+                invokeAll(actions);
+            }
+        }
+
+        private final class BatchScan extends RecursiveAction {
+
+            private final List<FileObject> fileObjects;
+
+            public BatchScan(List<FileObject> fileObjects) {
+                this.fileObjects = fileObjects;
+            }
+
+            @Override
+            protected void compute() {
+                check(fileObjects);
+            }
+        }
+    }
+
+    private static final class Lease {
+
+        private final CancellableChecker checker;
+
+        private final ClassPath path;
+
+        public Lease(CancellableChecker checker, ClassPath path) {
+            this.checker = checker;
+            this.path = path;
+        }
+    }
+}
@@ -18,39 +18,64 @@
  */
 package org.neumanb.nb.checkstyle.tasklist;
 
-import com.puppycrawl.tools.checkstyle.Checker;
-import com.puppycrawl.tools.checkstyle.api.AuditEvent;
 import com.puppycrawl.tools.checkstyle.api.CheckstyleException;
+import com.puppycrawl.tools.checkstyle.api.Violation;
+import org.neumanb.nb.checkstyle.CancellableChecker;
+import org.neumanb.nb.checkstyle.CheckstyleEvents;
 import org.neumanb.nb.checkstyle.CheckstyleListener;
+import org.neumanb.nb.checkstyle.CheckstyleMetrics;
 import org.neumanb.nb.checkstyle.CheckstyleSettings;
 import org.neumanb.nb.checkstyle.Configuration;
 import org.neumanb.nb.checkstyle.ConfigurationLoader;
-import org.neumanb.nb.checkstyle.Severity;
 import org.neumanb.nb.checkstyle.CheckerCache;
+import org.neumanb.nb.checkstyle.ViolationCache;
+import org.neumanb.nb.checkstyle.ViolationStore;
 import org.neumanb.nb.checkstyle.error.ErrorHandler;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import org.netbeans.spi.tasklist.FileTaskScanner;
 import org.netbeans.spi.tasklist.Task;
+import org.netbeans.spi.tasklist.TaskScanningScope;
 import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.NbBundle;
 
 /**
+ * The scanner fed by the task list one file at a time. The file is checked
+ * in the batch together with its siblings in the scanned scope, see
+ * {@link BatchCheck}, and their results are kept until the task list asks
+ * for them or the scan finishes. When the scope is the single file or just
+ * the opened files, the siblings out of it are not checked.
+ * Provides no tasks when the parallel scan is enabled.
  *
  * @author Petr Hejl
+ * @see CheckstylePushTaskScanner
  */
 public class CheckstyleTaskScanner extends FileTaskScanner implements PropertyChangeListener {
 
     private static final Logger LOGGER = Logger.getLogger(CheckstyleTaskScanner.class.getName());
 
+    private static final int MAX_PREFETCHED = 1024;
+
     private final CheckerCache checkerCache = new CheckerCache();
 
+    /* GuardedBy("prefetched") */
+    private final Map<File, Prefetched> prefetched = new LinkedHashMap<File, Prefetched>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Prefetched> eldest) {
+            return size() > MAX_PREFETCHED;
+        }
+    };
+
     private Callback callback;
 
     public CheckstyleTaskScanner() {
@@ -82,6 +107,10 @@ public class CheckstyleTaskScanner extends FileTaskScanner implements PropertyCh
 
         try {
             Configuration config = ConfigurationLoader.getDefault().getConfiguration();
+            if (CheckstyleSettings.getDefault().isParallelScan()) {
+                // the tasks are pushed by the CheckstylePushTaskScanner
+                return null;
+            }
 
             File file = FileUtil.toFile(fileObject);
             if (file == null) { // occurs for libraries for example
@@ -93,59 +122,231 @@ public class CheckstyleTaskScanner extends FileTaskScanner implements PropertyCh
                 return Collections.emptyList();
             }
 
-            CollectingListener listener = new CollectingListener(
-                    config.getSeverity(), fileObject);
-
-            ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+            long start = System.nanoTime();
+            CheckstyleEvents.Span span = CheckstyleEvents.begin(CheckstyleEvents.Type.PROCESS)
+                    .setFile(file.getAbsolutePath())
+                    .setFileSize(file.length());
             try {
-                Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
-                Checker checker = checkerCache.acquireChecker(fileObject, config);
-                try {
-                    try {
-                        checker.addListener(listener);
-                        checker.process(Collections.singletonList(file));
-                    } finally {
-                        checker.removeListener(listener);
-                    }
-                } finally {
-                    checkerCache.releaseChecker(checker);
-                }
+                ViolationStore violations = check(fileObject, file, config, span);
+                span.setViolations(violations.size());
+                return createTasks(fileObject, violations);
             } finally {
-                Thread.currentThread().setContextClassLoader(originalClassLoader);
+                span.commit();
+                CheckstyleMetrics.getDefault().recordCheck(CheckstyleMetrics.Path.TASK_LIST,
+                        System.nanoTime() - start);
             }
-
-            return listener.getResults();
         } catch (CheckstyleException ex) {
             ErrorHandler.getDefault().handleError(fileObject, LOGGER, ex);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * Checks the file. The checks depending on more than the file run
+     * on the file alone each time it is scanned, their results are not kept.
+     */
+    private ViolationStore check(FileObject fileObject, File file, Configuration config,
+            CheckstyleEvents.Span span) throws CheckstyleException {
+
+        ViolationStore violations = checkPerFile(fileObject, file, config.getPerFileChecks(), span);
+        Configuration crossFileConfig = config.getCrossFileChecks();
+        if (crossFileConfig == null) {
+            return violations;
+        }
+
+        BatchCheck batch = new BatchCheck(crossFileConfig);
+        BatchCheck.Item item = batch.add(fileObject, file, null);
+        process(batch, fileObject, crossFileConfig);
+        // the prefetched results are kept as they are
+        ViolationStore result = new ViolationStore();
+        result.addAll(violations);
+        result.addAll(item.getViolations());
+        return result;
+    }
+
+    /**
+     * Checks the file together with its siblings not checked yet. The results
+     * of the siblings are kept for their own scan which usually follows.
+     */
+    private ViolationStore checkPerFile(FileObject fileObject, File file, Configuration config,
+            CheckstyleEvents.Span span) throws CheckstyleException {
+
+        ViolationCache.Key key;
+        ViolationStore violations = null;
+        Prefetched entry = getPrefetched(file);
+        if (entry != null) {
+            key = entry.key;
+            violations = entry.violations;
+        } else {
+            key = ViolationCache.getDefault().createKey(file, config);
+        }
+        if (violations == null) {
+            violations = getCached(file, key, config);
+        }
+        if (violations != null) {
+            span.setCacheHit(true);
+            return violations;
+        }
+
+        BatchCheck batch = new BatchCheck(config);
+        BatchCheck.Item item = batch.add(fileObject, file, key);
+        addSiblings(batch, fileObject, config);
+        process(batch, fileObject, config);
+
+        for (BatchCheck.Item sibling : batch.getItems()) {
+            if (sibling != item && !sibling.isFailed()) {
+                // the failed ones are checked again to report the failure
+                prefetch(sibling.getFile(), sibling.getKey(), sibling.getViolations());
+            }
+        }
+        return item.getViolations();
+    }
+
+    private void process(BatchCheck batch, FileObject fileObject, Configuration config)
+            throws CheckstyleException {
+
+        ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(config.getCheckstyleClassLoader());
+            CancellableChecker checker = checkerCache.acquireChecker(fileObject, config);
+            try {
+                batch.process(checker);
+            } finally {
+                checkerCache.releaseChecker(checker);
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(originalClassLoader);
+        }
+    }
+
+    private void addSiblings(BatchCheck batch, FileObject fileObject, Configuration config) {
+        FileObject folder = fileObject.getParent();
+        if (folder == null) {
+            return;
+        }
+
+        TaskScanningScope scope = CheckstylePushTaskScanner.getScanningScope();
+        if (scope == null) {
+            // the file is checked alone
+            return;
+        }
+
+        Pattern ignored = config.getIgnoredPathsPattern();
+        ViolationCache violationCache = ViolationCache.getDefault();
+        for (FileObject sibling : folder.getChildren()) {
+            if (batch.isFull()) {
+                return;
+            }
+            if (sibling.equals(fileObject) || !sibling.isData()
+                    || !"java".equalsIgnoreCase(sibling.getExt()) // NOI18N
+                    || !scope.isInScope(sibling)) {
+                continue;
+            }
+            File file = FileUtil.toFile(sibling);
+            if (file == null || (ignored != null && ignored.matcher(file.getAbsolutePath()).matches())) {
+                continue;
+            }
+            synchronized (prefetched) {
+                if (prefetched.containsKey(file)) {
+                    continue;
+                }
+            }
+
+            ViolationCache.Key key = violationCache.createKey(file, config);
+            if (key != null && violationCache.contains(key)) {
+                // replayed from the cache once its turn comes, the key is kept
+                prefetch(file, key, null);
+            } else {
+                batch.add(sibling, file, key);
+            }
+        }
+    }
+
+    private static ViolationStore getCached(File file, ViolationCache.Key key, Configuration config) {
+        ViolationCache violationCache = ViolationCache.getDefault();
+        List<Violation> cached = key != null ? violationCache.get(key, config) : null;
+        if (cached == null) {
+            return null;
+        }
+        CheckstyleListener listener = new CheckstyleListener(config.getSeverity());
+        violationCache.replay(cached, file.getAbsolutePath(), listener);
+        return listener.getViolations();
+    }
+
+    private Prefetched getPrefetched(File file) {
+        // the stat is much cheaper than hashing the content for the key
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (prefetched) {
+            Prefetched entry = prefetched.get(file);
+            if (entry == null) {
+                return null;
+            }
+            // kept so the file is not batched again until the scan finishes
+            if (entry.lastModified == lastModified && entry.length == length) {
+                return entry;
+            }
+            prefetched.remove(file);
+            return null;
+        }
+    }
+
+    private void prefetch(File file, ViolationCache.Key key, ViolationStore violations) {
+        Prefetched entry = new Prefetched(key, violations, file.lastModified(), file.length());
+        synchronized (prefetched) {
+            prefetched.put(file, entry);
+        }
+    }
+
     @Override
     public void notifyFinish() {
-        checkerCache.clear();
+        synchronized (prefetched) {
+            prefetched.clear();
+        }
+        // the next scan reports the problems across the files again
+        checkerCache.reset();
     }
 
     @Override
     public synchronized void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getPropertyName() == null
+                || CheckstyleSettings.isConfigurationProperty(evt.getPropertyName())) {
+            // checkers for the old configuration would never be hit again
+            checkerCache.clear();
+        }
+        notifyFinish();
         if (callback != null) {
             callback.refreshAll();
         }
     }
 
-    private static class CollectingListener extends CheckstyleListener<Task> {
+    static List<Task> createTasks(FileObject file, ViolationStore violations) {
+        List<Task> tasks = new ArrayList<>(violations.size());
+        for (int i = 0; i < violations.size(); i++) {
+            // the task needs the message, it is shared with the store at least
+            tasks.add(Task.create(file, "org-neumanb-nb-checkstyle-Task", // NOI18N
+                    violations.getMessage(i), violations.getLine(i)));
+        }
+        return tasks;
+    }
 
-        private final FileObject file;
+    private static final class Prefetched {
 
-        public CollectingListener(Severity minimalSeverity, FileObject file) {
-            super(minimalSeverity);
-            this.file = file;
-        }
+        private final ViolationCache.Key key;
 
-        @Override
-        public Task createResult(AuditEvent evt) {
-            return Task.create(file, "org-neumanb-nb-checkstyle-Task", // NOI18N
-                    evt.getMessage(), evt.getLine());
+        // null if the violations are cached
+        private final ViolationStore violations;
+
+        private final long lastModified;
+
+        private final long length;
+
+        public Prefetched(ViolationCache.Key key, ViolationStore violations, long lastModified,
+                long length) {
+            this.key = key;
+            this.violations = violations;
+            this.lastModified = lastModified;
+            this.length = length;
         }
     }
 }